@@ -0,0 +1,196 @@
+package ro.ase.dad.c01;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed blob store on a directory shared with c03 (claim-check for large uploads).
+ *
+ * A blob is stored as {@code <dir>/<first 2 hex chars>/<sha256 hex>}; storing the same bytes twice
+ * only refreshes the file's modification time. Blobs are written to a temp file and moved into place,
+ * so a reader never sees a partial file.
+ *
+ * Each blob is referenced by the jobs stored with it and deleted when the last of them is released,
+ * i.e. when its done or failed message arrives (c03 only reads blobs). As a last resort, a background
+ * sweeper deletes blobs not touched for ttlMs, together with their references: those of jobs that
+ * never finished, or that were pending when c01 restarted and lost its in-memory references. ttlMs
+ * must be well above the longest time a job can wait in the broker.
+ */
+public class BlobStore {
+
+    public static final class Blob {
+        public final String key;      // sha256 hex, also the checksum c03 verifies
+        public final long size;
+
+        Blob(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+
+    private final Path dir;
+    private final long ttlMs;
+
+    // blob key -> number of unfinished jobs using it; a key's blob is only created or deleted in compute
+    private final Map<String, Integer> refs = new ConcurrentHashMap<>();
+    private final Map<String, String> jobBlobs = new ConcurrentHashMap<>(); // job id -> blob key
+
+    public BlobStore(Path dir, long ttlMs) {
+        this.dir = dir;
+        this.ttlMs = ttlMs;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create blob dir " + dir, e);
+        }
+    }
+
+    /** Stores {@code data} for job {@code jobId}, which holds it until {@link #release}. */
+    public Blob put(byte[] data, String jobId) throws IOException {
+        Path tmp = Files.createTempFile(dir, "upload-", ".tmp");
+        try {
+            Files.write(tmp, data);
+            String key = HexFormat.of().formatHex(sha256().digest(data));
+            acquire(key, tmp, jobId);
+            return new Blob(key, data.length);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Streams {@code in} into the store for job {@code jobId}, hashing while copying, so the upload
+     * never sits on the heap. Fails if the stream does not hold exactly {@code expectedSize} bytes.
+     * The job holds the blob until {@link #release}.
+     */
+    public Blob put(InputStream in, long expectedSize, String jobId) throws IOException {
+        MessageDigest md = sha256();
+        Path tmp = Files.createTempFile(dir, "upload-", ".tmp");
+        try {
+            long n = Files.copy(new DigestInputStream(in, md), tmp, StandardCopyOption.REPLACE_EXISTING);
+            if (n != expectedSize) throw new IOException("Upload ended after " + n + " of " + expectedSize + " bytes");
+
+            String key = HexFormat.of().formatHex(md.digest());
+            acquire(key, tmp, jobId);
+            return new Blob(key, n);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Moves {@code tmp} into place unless the blob exists, and adds a reference for the job. */
+    private void acquire(String key, Path tmp, String jobId) throws IOException {
+        try {
+            refs.compute(key, (k, n) -> {
+                try {
+                    if (!touch(k)) moveIntoPlace(tmp, k);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return n == null ? 1 : n + 1;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        jobBlobs.put(jobId, key);
+    }
+
+    /** Drops the job's reference to its blob, deleting the blob if no other job uses it. */
+    public void release(String jobId) {
+        String key = jobBlobs.remove(jobId);
+        if (key == null) return;
+        refs.computeIfPresent(key, (k, n) -> {
+            if (n > 1) return n - 1;
+            try {
+                Files.deleteIfExists(path(k));
+            } catch (IOException e) {
+                System.out.println("C01: blob " + k + " not deleted, left to the sweeper: " + e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /** Refreshes an existing blob's mtime; false if there is no blob with this key yet. */
+    private boolean touch(String key) throws IOException {
+        Path target = path(key);
+        if (!Files.exists(target)) return false;
+        Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    public void startSweeper() {
+        if (ttlMs <= 0) return;
+        ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "c01-blob-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(1000, Math.min(3_600_000, ttlMs / 4));
+        ex.scheduleWithFixedDelay(this::sweep, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    /** Deletes orphans: blobs (and stray temp files) not touched for ttlMs, with their references. */
+    void sweep() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        int[] removed = {0};
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                // under the key's lock, so a concurrent put of the same bytes either refreshes it first or recreates it
+                refs.compute(p.getFileName().toString(), (k, n) -> {
+                    try {
+                        if (Files.getLastModifiedTime(p).toMillis() >= cutoff) return n;
+                        if (Files.deleteIfExists(p)) removed[0]++;
+                    } catch (IOException ignored) {
+                        // deleted concurrently
+                    }
+                    return null;
+                });
+            }
+            jobBlobs.values().removeIf(k -> !refs.containsKey(k));
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("C01: blob sweep failed: " + e.getMessage());
+        }
+        if (removed[0] > 0) System.out.println("C01: blob sweep removed " + removed[0] + " file(s)");
+    }
+
+    private Path path(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private void moveIntoPlace(Path tmp, String key) throws IOException {
+        Path target = path(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // same content stored concurrently
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,55 +1,346 @@
 package ro.ase.dad.c01;
 
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
 import javax.jms.JMSConsumer;
 import javax.jms.JMSContext;
-import javax.jms.JMSProducer;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
 import javax.jms.Queue;
+import javax.jms.Session;
 import javax.jms.Topic;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQMessageProducer;
+import org.apache.activemq.AsyncCallback;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMS access for c01.
+ *
+ * Job messages go out over one long-lived connection. Large bodies are sent asynchronously
+ * from a small pool of producer sessions: the call returns at once and the future completes
+ * when the broker acknowledges the message. The ActiveMQ 5.x client does not implement the
+ * JMS 2.0 CompletionListener, so its own AsyncCallback is used instead, with the producer
+ * window bounding the bytes in flight. Small bodies (claim-check references and small images)
+ * are queued to a batcher, which sends up to JMS_BATCH_SIZE of them in one transacted session
+ * and commits once per group. Each job goes to its lane's topic (fast or batch, see
+ * {@link JobCost}) with its JMS priority. If the connection fails, everything is rebuilt on the next publish.
+ */
 public class JmsClient implements AutoCloseable {
 
+    /** {@code timeline} is c03's part of the job timeline (JSON), or null from a c03 that does not send it. */
     public interface OnJobDone {
-        void onDone(String jobId, long imageId);
+        void onDone(String jobId, long imageId, String timeline);
+    }
+
+    public interface OnJobFailed {
+        void onFailed(String jobId, String error, String timeline);
+    }
+
+    private static final int POOL_SIZE        = getint("JMS_PRODUCER_POOL", 4);
+    private static final int WINDOW_BYTES     = getint("JMS_PRODUCER_WINDOW_BYTES", 8 * 1024 * 1024);
+    private static final int BATCH_SIZE       = getint("JMS_BATCH_SIZE", 32);
+    private static final int BATCH_LINGER_MS  = getint("JMS_BATCH_LINGER_MS", 2);
+    private static final int BATCH_MAX_BYTES  = getint("JMS_BATCH_MAX_BYTES", 64 * 1024);
+    private static final int BATCH_QUEUE      = getint("JMS_BATCH_QUEUE", 1024);
+
+    /** Builds a job message in whichever session ends up sending it. */
+    private interface MessageBuilder {
+        Message build(Session session) throws JMSException;
+    }
+
+    private static final class Slot {
+        final Session session;
+        final ActiveMQMessageProducer producer; // anonymous: each send names its lane's topic
+        final Topic batchTopic;
+        final Topic fastTopic;
+
+        Slot(Session session, ActiveMQMessageProducer producer, Topic batchTopic, Topic fastTopic) {
+            this.session = session;
+            this.producer = producer;
+            this.batchTopic = batchTopic;
+            this.fastTopic = fastTopic;
+        }
+    }
+
+    private static final class Pending {
+        final String jobId;
+        final JobCost.Lane lane;
+        final int priority;
+        final MessageBuilder builder;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(String jobId, JobCost.Lane lane, int priority, MessageBuilder builder) {
+            this.jobId = jobId;
+            this.lane = lane;
+            this.priority = priority;
+            this.builder = builder;
+        }
     }
 
     private final ConnectionFactory cf;
     private final String bmpTopicName;
+    private final String fastTopicName;
     private final String doneQueueName;
+    private final String payloadEncoding;
+    private final int compressMinBytes;
 
     private JMSContext consumerCtx;
 
+    // producer side, rebuilt after a connection failure; guarded by this
+    private Connection producerConn;
+    private BlockingQueue<Slot> slots;
+    private Batcher batcher;
+
     public JmsClient(String brokerHost, int brokerPort, String user, String pass,
-                     String bmpTopicName, String doneQueueName) {
+                     String bmpTopicName, String fastTopicName, String doneQueueName,
+                     String payloadEncoding, int compressMinBytes) {
 
         String url = "tcp://" + brokerHost + ":" + brokerPort;
-        this.cf = new ActiveMQConnectionFactory(user, pass, url);
+        ActiveMQConnectionFactory amq = new ActiveMQConnectionFactory(user, pass, url);
+        amq.setProducerWindowSize(WINDOW_BYTES);
+        this.cf = amq;
         this.bmpTopicName = bmpTopicName;
+        this.fastTopicName = fastTopicName;
         this.doneQueueName = doneQueueName;
+        this.payloadEncoding = payloadEncoding;
+        this.compressMinBytes = compressMinBytes;
+    }
+
+    /**
+     * Publishes a job with the BMP in the body to its lane's topic at the given JMS priority;
+     * the future completes once the broker has it.
+     */
+    public CompletableFuture<Void> publishBmpJob(String jobId, JobCost.Lane lane, int priority,
+                                                 boolean zoomIn, int percent, String mode,
+                                                 String filename, byte[] bmpBytes) {
+        // the "encoding" property tells c03 how to read the body; absent means raw BMP bytes
+        byte[] deflated = PayloadCodec.isDeflate(payloadEncoding)
+                ? PayloadCodec.deflateIfWorthIt(bmpBytes, compressMinBytes) : null;
+        byte[] body = deflated != null ? deflated : bmpBytes;
+
+        CompletableFuture<Void> f = send(jobId, lane, priority, body.length, s -> {
+            BytesMessage m = s.createBytesMessage();
+            m.writeBytes(body);
+            setJobProperties(m, jobId, zoomIn, percent, mode, filename);
+            if (deflated != null) m.setStringProperty("encoding", PayloadCodec.DEFLATE);
+            return m;
+        });
+        return f.thenRun(() -> System.out.println("Published jobId=" + jobId + " lane=" + lane.id() + " bytes=" + bmpBytes.length +
+                (deflated != null ? " deflated=" + deflated.length : "")));
+    }
+
+    /**
+     * Claim-check variant: the BMP is already in the shared blob store, so the message only carries
+     * its key, size and sha256 and an empty body.
+     */
+    public CompletableFuture<Void> publishBmpJobRef(String jobId, JobCost.Lane lane, int priority,
+                                                    boolean zoomIn, int percent, String mode,
+                                                    String filename, BlobStore.Blob blob) {
+        CompletableFuture<Void> f = send(jobId, lane, priority, 0, s -> {
+            BytesMessage m = s.createBytesMessage();
+            setJobProperties(m, jobId, zoomIn, percent, mode, filename);
+            m.setStringProperty("blobKey", blob.key);
+            m.setLongProperty("blobSize", blob.size);
+            m.setStringProperty("blobSha256", blob.key);
+            return m;
+        });
+        return f.thenRun(() -> System.out.println("Published jobId=" + jobId + " lane=" + lane.id() + " blob=" + blob.key + " bytes=" + blob.size));
+    }
+
+    private static void setJobProperties(Message m, String jobId, boolean zoomIn, int percent, String mode,
+                                         String filename) throws JMSException {
+        m.setStringProperty("jobId", jobId);
+        m.setBooleanProperty("zoomIn", zoomIn);
+        m.setIntProperty("percent", percent);
+        m.setStringProperty("mode", mode);
+        m.setStringProperty("filename", filename);
+    }
+
+    private CompletableFuture<Void> send(String jobId, JobCost.Lane lane, int priority, int bodyBytes,
+                                         MessageBuilder builder) {
+        Pending p = new Pending(jobId, lane, priority, builder);
+        p.done.whenComplete((v, err) -> {
+            if (err != null) System.out.println("Publish failed jobId=" + jobId + ": " + err.getMessage());
+        });
+
+        try {
+            Batcher b = BATCH_SIZE > 1 && bodyBytes <= BATCH_MAX_BYTES ? batcher() : null;
+            if (b == null || !b.queue.offer(p)) sendAsync(p);
+        } catch (Exception e) {
+            p.done.completeExceptionally(e);
+        }
+        return p.done;
+    }
+
+    private void sendAsync(Pending p) throws Exception {
+        BlockingQueue<Slot> pool = slots();
+        Slot slot = pool.poll(30, TimeUnit.SECONDS);
+        if (slot == null) throw new IllegalStateException("No JMS producer available");
+        try {
+            Message m = p.builder.build(slot.session);
+            m.setStringProperty("lane", p.lane.id());
+            // trace context: c03 measures the broker queueing time from this
+            m.setLongProperty("traceEnqueued", System.currentTimeMillis());
+            slot.producer.send(p.lane == JobCost.Lane.FAST ? slot.fastTopic : slot.batchTopic, m, DeliveryMode.PERSISTENT,
+                    p.priority, Message.DEFAULT_TIME_TO_LIVE, new AsyncCallback() {
+                        @Override
+                        public void onSuccess() {
+                            p.done.complete(null);
+                        }
+
+                        @Override
+                        public void onException(JMSException e) {
+                            p.done.completeExceptionally(e);
+                        }
+                    });
+        } finally {
+            pool.offer(slot);
+        }
     }
 
-    public void publishBmpJob(String jobId, boolean zoomIn, int percent, String filename, byte[] bmpBytes) {
-        try (JMSContext ctx = cf.createContext()) {
-            Topic bmpTopic = ctx.createTopic(bmpTopicName);
-            JMSProducer producer = ctx.createProducer();
+    private synchronized BlockingQueue<Slot> slots() throws JMSException {
+        ensureProducers();
+        return slots;
+    }
 
-            System.out.println("Publishing to " + bmpTopicName + " at " +
-                    ((ActiveMQConnectionFactory) cf).getBrokerURL());
+    private synchronized Batcher batcher() throws JMSException {
+        ensureProducers();
+        return batcher;
+    }
 
-            producer
-                    .setProperty("jobId", jobId)
-                    .setProperty("zoomIn", zoomIn)
-                    .setProperty("percent", percent)
-                    .setProperty("filename", filename)
-                    .send(bmpTopic, bmpBytes);
+    private void ensureProducers() throws JMSException {
+        if (producerConn != null) return;
 
-            System.out.println("Published jobId=" + jobId + " bytes=" + bmpBytes.length);
+        Connection conn = cf.createConnection();
+        try {
+            conn.setExceptionListener(e -> resetProducers(conn, e));
+            conn.start();
+
+            BlockingQueue<Slot> pool = new ArrayBlockingQueue<>(Math.max(1, POOL_SIZE));
+            for (int i = 0; i < Math.max(1, POOL_SIZE); i++) {
+                Session s = conn.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                pool.add(new Slot(s, (ActiveMQMessageProducer) s.createProducer(null),
+                        s.createTopic(bmpTopicName), s.createTopic(fastTopicName)));
+            }
+
+            Batcher b = null;
+            if (BATCH_SIZE > 1) {
+                Session tx = conn.createSession(true, Session.SESSION_TRANSACTED);
+                b = new Batcher(tx, tx.createProducer(null), tx.createTopic(bmpTopicName), tx.createTopic(fastTopicName));
+                b.start();
+            }
+
+            producerConn = conn;
+            slots = pool;
+            batcher = b;
+            System.out.println("JMS producers ready: pool=" + pool.size() + " batch=" + BATCH_SIZE + " topics=" + bmpTopicName + "," + fastTopicName
+                    + " at " + ((ActiveMQConnectionFactory) cf).getBrokerURL());
+        } catch (JMSException e) {
+            try { conn.close(); } catch (Exception ignored) {}
+            throw e;
         }
     }
 
-    public void startDoneConsumer(OnJobDone handler) {
+    private synchronized void resetProducers(Connection failed, Exception cause) {
+        if (producerConn != failed) return;
+        System.out.println("JMS producer connection failed, rebuilding on next publish: " + cause.getMessage());
+        closeProducers();
+    }
+
+    private synchronized void closeProducers() {
+        if (batcher != null) batcher.stop();
+        try {
+            if (producerConn != null) producerConn.close();
+        } catch (Exception ignored) {}
+        producerConn = null;
+        slots = null;
+        batcher = null;
+    }
+
+    /** Sends queued small messages in transacted groups: one broker round trip per group. */
+    private static final class Batcher implements Runnable {
+        final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(BATCH_QUEUE);
+        private final Session session;
+        private final MessageProducer producer;
+        private final Topic batchTopic;
+        private final Topic fastTopic;
+        private final Thread thread = new Thread(this, "c01-jms-batcher");
+        private volatile boolean running = true;
+
+        Batcher(Session session, MessageProducer producer, Topic batchTopic, Topic fastTopic) throws JMSException {
+            this.session = session;
+            this.producer = producer;
+            this.batchTopic = batchTopic;
+            this.fastTopic = fastTopic;
+            producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+            thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void stop() {
+            running = false;
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            List<Pending> group = new ArrayList<>(BATCH_SIZE);
+            try {
+                while (running) {
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    group.add(first);
+                    long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_LINGER_MS);
+                    while (group.size() < BATCH_SIZE) {
+                        Pending p = queue.poll(until - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (p == null) break;
+                        group.add(p);
+                    }
+                    sendGroup(group);
+                    group.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                Exception closed = new IllegalStateException("JMS producer closed");
+                group.forEach(p -> p.done.completeExceptionally(closed));
+                for (Pending p; (p = queue.poll()) != null; ) p.done.completeExceptionally(closed);
+            }
+        }
+
+        private void sendGroup(List<Pending> group) {
+            try {
+                for (Pending p : group) {
+                    Message m = p.builder.build(session);
+                    m.setStringProperty("lane", p.lane.id());
+                    m.setLongProperty("traceEnqueued", System.currentTimeMillis());
+                    producer.send(p.lane == JobCost.Lane.FAST ? fastTopic : batchTopic, m, DeliveryMode.PERSISTENT,
+                            p.priority, Message.DEFAULT_TIME_TO_LIVE);
+                }
+                session.commit();
+                group.forEach(p -> p.done.complete(null));
+            } catch (Exception e) {
+                try { session.rollback(); } catch (Exception ignored) {}
+                group.forEach(p -> p.done.completeExceptionally(e));
+            }
+        }
+    }
+
+    public void startDoneConsumer(OnJobDone handler, OnJobFailed failed) {
         this.consumerCtx = cf.createContext();
         Queue doneQueue = consumerCtx.createQueue(doneQueueName);
 
@@ -57,8 +348,14 @@ public class JmsClient implements AutoCloseable {
         consumer.setMessageListener(m -> {
             try {
                 String jobId = m.getStringProperty("jobId");
-                long imageId = m.getLongProperty("imageId");
-                handler.onDone(jobId, imageId);
+                // c03 reports a job it could not finish with an "error" property and no imageId
+                String error = m.getStringProperty("error");
+                String timeline = m.getStringProperty("timeline");
+                if (error != null) {
+                    failed.onFailed(jobId, error, timeline);
+                } else {
+                    handler.onDone(jobId, m.getLongProperty("imageId"), timeline);
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -67,8 +364,19 @@ public class JmsClient implements AutoCloseable {
 
     @Override
     public void close() {
+        closeProducers();
         try {
             if (consumerCtx != null) consumerCtx.close();
         } catch (Exception ignored) {}
     }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package ro.ase.dad.c01;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Rough cost of a zoom job, estimated from the BMP header alone, used to pick its lane.
+ *
+ * The cost is the pixels read plus the pixels written (source × factor²), weighted by how much
+ * work the resampling mode does per output pixel. Jobs up to the fast-lane limit go to the fast
+ * lane, which c03 serves with capacity of its own; everything else is batch. Within the batch
+ * lane, very large jobs get a lower JMS priority than medium ones.
+ */
+public final class JobCost {
+
+    public enum Lane {
+        FAST(7), BATCH(4);
+
+        public final int priority;
+
+        Lane(int priority) {
+            this.priority = priority;
+        }
+
+        public String id() {
+            return name().toLowerCase();
+        }
+    }
+
+    private JobCost() {
+    }
+
+    /** Header must have been validated by checkBmpHeader. */
+    public static long estimate(byte[] head, boolean zoomIn, int percent, String mode) {
+        ByteBuffer bb = ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN);
+        long width = bb.getInt(18);
+        long height = Math.abs((long) bb.getInt(22));
+        long src = width * height;
+
+        // same factor as the workers' BmpUtils.factor
+        double factor = zoomIn ? 1.0 + percent / 100.0 : 1.0 - percent / 100.0;
+        if (factor <= 0.05) factor = 0.05;
+        long dst = (long) (src * factor * factor);
+
+        return (src + dst) * modeWeight(mode);
+    }
+
+    public static Lane lane(long cost, long fastMaxCost) {
+        return cost <= fastMaxCost ? Lane.FAST : Lane.BATCH;
+    }
+
+    /** JMS priority: the lane's, lowered for batch jobs far above the fast-lane limit. */
+    public static int priority(Lane lane, long cost, long fastMaxCost) {
+        if (lane == Lane.BATCH && cost > 16 * fastMaxCost) return lane.priority - 2;
+        return lane.priority;
+    }
+
+    /** Worker time per mode relative to nearest, rounded from the README's "Resampling modes" table. */
+    private static int modeWeight(String mode) {
+        switch (mode == null ? "nearest" : mode) {
+            case "bicubic":
+                return 6;
+            case "bilinear":
+            case "area":
+                return 3;
+            default:
+                return 1;
+        }
+    }
+}
@@ -1,39 +1,321 @@
 package ro.ase.dad.c01;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * Job status for the polling and download endpoints.
+ *
+ * The store is bounded: entries are dropped oldest-first once there are more than maxEntries,
+ * or once they are older than ttlMs. Entries are compact. The job id is kept as its two longs,
+ * the status as an enum and the image id as a long; the download URL is built only when it is
+ * asked for. The index is an open-addressing table of entries keyed by those two longs and the
+ * creation order an array ring, so a job costs one JobStatus object and two array slots, with no
+ * UUID objects, map entries or queue nodes. All of it is guarded by this store's lock.
+ *
+ * With a journal path set, every change is appended to that file as one line. On startup the
+ * journal is replayed, so recent jobs survive a restart. It is rewritten with only the live
+ * entries at startup and whenever it grows well past the live set.
+ */
 public class JobStore {
 
+    public enum Status { PENDING, DONE, FAILED }
+
     public static class JobStatus {
-        public final String jobId;
-        public volatile String status; // PENDING | DONE
-        public volatile Long imageId;
-        public volatile String downloadUrl;
+        private final long msb;
+        private final long lsb;
+        final long createdMillis;
+        public volatile Status status = Status.PENDING;
+        private volatile long imageId = -1;
+        public volatile String error;
+
+        JobStatus(long msb, long lsb, long createdMillis) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.createdMillis = createdMillis;
+        }
+
+        public String jobId() {
+            return new UUID(msb, lsb).toString();
+        }
 
-        public JobStatus(String jobId) {
-            this.jobId = jobId;
-            this.status = "PENDING";
+        /** Image id in c06, or null until the job is done. */
+        public Long imageId() {
+            return imageId < 0 ? null : imageId;
         }
     }
 
-    private final Map<String, JobStatus> jobs = new ConcurrentHashMap<>();
+    private final String downloadBase;
+    private final int maxEntries;
+    private final long ttlMs;
+
+    private JobStatus[] table = new JobStatus[1024];                // linear probing, at most half full
+    private int size;
+    private final ArrayDeque<JobStatus> order = new ArrayDeque<>(); // creation order, for eviction
+
+    private final Path journal;
+    private BufferedWriter journalOut; // guarded by this
+    private long journalLines;         // guarded by this
+
+    public JobStore(String downloadBase, int maxEntries, long ttlMs, Path journal) {
+        this.downloadBase = downloadBase;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMs = ttlMs;
+        this.journal = journal;
+        if (journal != null) openJournal();
+    }
 
-    public JobStatus markPending(String jobId) {
-        JobStatus js = new JobStatus(jobId);
-        jobs.put(jobId, js);
+    public synchronized JobStatus markPending(String jobId) {
+        if (!isJobId(jobId)) return null;
+        long now = System.currentTimeMillis();
+        JobStatus js = entry(msb(jobId), lsb(jobId), now);
+        js.status = Status.PENDING;
+        append("P " + jobId + " " + now);
+        evict(now);
         return js;
     }
 
-    public JobStatus markDone(String jobId, long imageId, String downloadUrl) {
-        JobStatus js = jobs.computeIfAbsent(jobId, JobStatus::new);
-        js.status = "DONE";
+    public synchronized JobStatus markDone(String jobId, long imageId) {
+        if (!isJobId(jobId)) return null;
+        long now = System.currentTimeMillis();
+        JobStatus js = entry(msb(jobId), lsb(jobId), now);
         js.imageId = imageId;
-        js.downloadUrl = downloadUrl;
+        js.status = Status.DONE;
+        append("D " + jobId + " " + now + " " + imageId);
+        return js;
+    }
+
+    public synchronized JobStatus markFailed(String jobId, String error) {
+        if (!isJobId(jobId)) return null;
+        long now = System.currentTimeMillis();
+        JobStatus js = entry(msb(jobId), lsb(jobId), now);
+        if (js.status == Status.DONE) return js;
+        js.error = error;
+        js.status = Status.FAILED;
+        append("F " + jobId + " " + now + " " + (error == null ? "" : error.replace('\n', ' ').replace('\r', ' ')));
         return js;
     }
 
-    public JobStatus get(String jobId) {
-        return jobs.get(jobId);
+    /**
+     * Marks jobs still PENDING {@code timeoutMs} after they were created as FAILED and returns them,
+     * e.g. jobs whose c03 died after taking them. A done message that still arrives later wins.
+     */
+    public synchronized List<JobStatus> expirePending(long timeoutMs, String error) {
+        long now = System.currentTimeMillis();
+        long cutoff = now - timeoutMs;
+        List<JobStatus> expired = new ArrayList<>();
+        for (JobStatus js : order) {
+            if (js.createdMillis >= cutoff) break;
+            if (js.status != Status.PENDING) continue;
+            js.error = error;
+            js.status = Status.FAILED;
+            append("F " + js.jobId() + " " + now + " " + error);
+            expired.add(js);
+        }
+        return expired;
+    }
+
+    public synchronized JobStatus get(String jobId) {
+        if (!isJobId(jobId)) return null;
+        evict(System.currentTimeMillis());
+        return table[slot(msb(jobId), lsb(jobId))];
+    }
+
+    public String downloadUrl(JobStatus js) {
+        Long imageId = js.imageId();
+        return imageId == null ? null : downloadBase + "/images/" + imageId;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private JobStatus entry(long msb, long lsb, long now) {
+        int i = slot(msb, lsb);
+        if (table[i] != null) return table[i];
+        JobStatus fresh = new JobStatus(msb, lsb, now);
+        table[i] = fresh;
+        order.add(fresh);
+        if (++size > table.length / 2) resize();
+        return fresh;
+    }
+
+    private void evict(long now) {
+        long cutoff = ttlMs > 0 ? now - ttlMs : Long.MIN_VALUE;
+        for (JobStatus head; (head = order.peek()) != null; ) {
+            if (size <= maxEntries && head.createdMillis >= cutoff) break;
+            order.poll();
+            remove(head);
+        }
+    }
+
+    // --- long-pair hash table ---
+
+    /** The slot holding the job with this id, or the empty slot where it would go. */
+    private int slot(long msb, long lsb) {
+        int mask = table.length - 1;
+        for (int i = hash(msb, lsb) & mask; ; i = (i + 1) & mask) {
+            JobStatus js = table[i];
+            if (js == null || (js.msb == msb && js.lsb == lsb)) return i;
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Removes the entry and shifts the entries after it back, so no probe chain is broken. */
+    private void remove(JobStatus js) {
+        int mask = table.length - 1;
+        int i = slot(js.msb, js.lsb);
+        if (table[i] != js) return;
+        table[i] = null;
+        size--;
+        for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+            int home = hash(table[j].msb, table[j].lsb) & mask;
+            // table[j] may move to the hole at i unless its home lies cyclically in (i, j]
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = table[j];
+                table[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    private void resize() {
+        JobStatus[] old = table;
+        table = new JobStatus[old.length * 2];
+        for (JobStatus js : old) {
+            if (js != null) table[slot(js.msb, js.lsb)] = js;
+        }
+    }
+
+    // --- job ids ---
+
+    /** Accepts the canonical form UUID.toString() produces, the only one c01 hands out. */
+    private static boolean isJobId(String s) {
+        if (s == null || s.length() != 36) return false;
+        for (int i = 0; i < 36; i++) {
+            char c = s.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : Character.digit(c, 16) < 0) return false;
+        }
+        return true;
+    }
+
+    private static long msb(String id) {
+        return hex(id, 0, 18);
+    }
+
+    private static long lsb(String id) {
+        return hex(id, 19, 36);
+    }
+
+    private static long hex(String s, int from, int to) {
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c != '-') v = (v << 4) | Character.digit(c, 16);
+        }
+        return v;
+    }
+
+    // --- journal ---
+
+    private synchronized void openJournal() {
+        try {
+            if (Files.exists(journal)) replay(Files.readAllLines(journal, StandardCharsets.UTF_8));
+            evict(System.currentTimeMillis());
+            compact();
+            System.out.println("C01: job journal " + journal + " restored " + size + " job(s)");
+        } catch (IOException e) {
+            System.out.println("C01: job journal disabled, cannot use " + journal + ": " + e.getMessage());
+            journalOut = null;
+        }
+    }
+
+    private void replay(List<String> lines) {
+        for (String line : lines) {
+            String[] f = line.split(" ", 4);
+            if (f.length < 3) continue;
+            try {
+                if (!isJobId(f[1])) continue;
+                long ts = Long.parseLong(f[2]);
+                JobStatus js = entry(msb(f[1]), lsb(f[1]), ts);
+                switch (f[0]) {
+                    case "P":
+                        js.status = Status.PENDING;
+                        break;
+                    case "D":
+                        js.imageId = Long.parseLong(f[3]);
+                        js.status = Status.DONE;
+                        break;
+                    case "F":
+                        js.error = f.length > 3 ? f[3] : "";
+                        js.status = Status.FAILED;
+                        break;
+                    default:
+                        break;
+                }
+            } catch (RuntimeException ignored) {
+                // torn last line after a crash
+            }
+        }
+    }
+
+    private synchronized void append(String line) {
+        if (journalOut == null) return;
+        try {
+            journalOut.write(line);
+            journalOut.newLine();
+            journalOut.flush();
+            if (++journalLines > 2L * size + 10_000) compact();
+        } catch (IOException e) {
+            System.out.println("C01: job journal write failed, disabling it: " + e.getMessage());
+            try { journalOut.close(); } catch (IOException ignored) {}
+            journalOut = null;
+        }
+    }
+
+    /** Rewrites the journal with one or two lines per live entry and reopens it for appending. */
+    private synchronized void compact() throws IOException {
+        if (journalOut != null) journalOut.close();
+
+        Path parent = journal.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, "jobs-", ".tmp");
+        long lines = 0;
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (JobStatus js : order) {
+                String id = js.jobId();
+                w.write("P " + id + " " + js.createdMillis);
+                w.newLine();
+                lines++;
+                if (js.status == Status.DONE) {
+                    w.write("D " + id + " " + js.createdMillis + " " + js.imageId);
+                    w.newLine();
+                    lines++;
+                } else if (js.status == Status.FAILED) {
+                    w.write("F " + id + " " + js.createdMillis + " " + (js.error == null ? "" : js.error));
+                    w.newLine();
+                    lines++;
+                }
+            }
+        }
+        Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journalOut = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        journalLines = lines;
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,28 @@
 package ro.ase.dad.c01;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.Javalin;
+import io.javalin.config.SizeUnit;
 import io.javalin.http.UploadedFile;
-import io.javalin.websocket.WsContext;
 
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
+    private static final List<String> RESAMPLING_MODES = List.of("nearest", "bilinear", "bicubic", "area");
+
     private static String hex(byte[] b, int n) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < Math.min(n, b.length); i++) {
@@ -23,6 +35,60 @@ public class Main {
         return b != null && b.length >= 2 && b[0] == 'B' && b[1] == 'M';
     }
 
+    private static final int BMP_HEADER_BYTES = 54;
+
+    // largest upload ever read onto the heap (sent inline in its JMS message)
+    private static final long MAX_INLINE_BYTES = 16L * 1024 * 1024;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    // c01_stage_seconds{stage=...}, exported on GET /metrics
+    private static final Metrics.Histogram UPLOAD_STAGE = Metrics.stage("upload_read");
+    private static final Metrics.Histogram HEADER_STAGE = Metrics.stage("header_check");
+    private static final Metrics.Histogram PUBLISH_STAGE = Metrics.stage("jms_publish");
+
+    /** WS payload for a finished (DONE or FAILED) job, or null while it is still pending. */
+    private static String finishedPayload(JobStore store, JobStore.JobStatus st) {
+        if (st == null) return null;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", st.jobId());
+        m.put("status", st.status.name());
+        if (st.status == JobStore.Status.DONE) {
+            m.put("imageId", st.imageId());
+            m.put("downloadUrl", store.downloadUrl(st));
+        } else if (st.status == JobStore.Status.FAILED) {
+            m.put("error", st.error);
+        } else {
+            return null;
+        }
+        try {
+            return JSON.writeValueAsString(m);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Checks the file and info headers against what the workers support; returns an error or null. */
+    private static String checkBmpHeader(byte[] head, long size) {
+        if (head.length < BMP_HEADER_BYTES) return "BMP header truncated";
+        ByteBuffer bb = ByteBuffer.wrap(head).order(ByteOrder.LITTLE_ENDIAN);
+        int dataOffset = bb.getInt(10);
+        int dibSize = bb.getInt(14);
+        int width = bb.getInt(18);
+        int height = bb.getInt(22);
+        short bpp = bb.getShort(28);
+        int compression = bb.getInt(30);
+
+        if (dibSize < 40) return "Unsupported DIB header size " + dibSize;
+        if (bpp != 24 && bpp != 32) return "Unsupported bpp " + bpp + " (only 24 and 32 are supported)";
+        if (compression != 0) return "Unsupported BMP compression " + compression;
+        if (width <= 0 || height == 0 || dataOffset < BMP_HEADER_BYTES) return "Invalid BMP geometry";
+
+        long stride = ((width * (long) (bpp / 8) + 3) / 4) * 4;
+        if (dataOffset + stride * Math.abs((long) height) > size) return "BMP pixel data is truncated";
+        return null;
+    }
+
     public static void main(String[] args) {
         String brokerHost = System.getenv().getOrDefault("JMS_BROKER_HOST", "c02");
         int brokerPort = Integer.parseInt(System.getenv().getOrDefault("JMS_BROKER_PORT", "61616"));
@@ -30,30 +96,94 @@ public class Main {
         String jmsPass = System.getenv().getOrDefault("JMS_PASS", "dad");
 
         String bmpTopic = System.getenv().getOrDefault("JMS_BMP_TOPIC", "bmp.topic");
+        // jobs whose estimated cost (see JobCost) is at most JOB_FAST_MAX_COST go to the fast lane
+        String fastTopic = System.getenv().getOrDefault("JMS_BMP_FAST_TOPIC", "bmp.fast.topic");
+        long fastMaxCost = Long.parseLong(System.getenv().getOrDefault("JOB_FAST_MAX_COST", "4000000"));
+        // zoom in by at most MAX_ZOOM_IN_PERCENT (default 6x, the form's limit); zoom out by less than 100%
+        int maxZoomInPercent = Integer.parseInt(System.getenv().getOrDefault("MAX_ZOOM_IN_PERCENT", "500"));
         String doneQueue = System.getenv().getOrDefault("JMS_DONE_QUEUE", "job.done.queue");
 
         String c06Base = System.getenv().getOrDefault("C06_BASE_URL", "http://c06:3000");
 
         int port = Integer.parseInt(System.getenv().getOrDefault("PORT", "8081"));
 
-        JobStore store = new JobStore();
-        Set<WsContext> wsSessions = ConcurrentHashMap.newKeySet();
-
-        JmsClient jms = new JmsClient(brokerHost, brokerPort, jmsUser, jmsPass, bmpTopic, doneQueue);
+        // bounded job status; JOB_JOURNAL (optional) lets a restarted c01 answer for recent jobs
+        int jobStoreMax = Integer.parseInt(System.getenv().getOrDefault("JOB_STORE_MAX", "100000"));
+        long jobStoreTtlMs = Long.parseLong(System.getenv().getOrDefault("JOB_STORE_TTL_MS", "86400000"));
+        String jobJournal = System.getenv().getOrDefault("JOB_JOURNAL", "");
+        // jobs still PENDING after JOB_TIMEOUT_MS are failed (c03 acks before its c06 store ends); 0 disables
+        long jobTimeoutMs = Long.parseLong(System.getenv().getOrDefault("JOB_TIMEOUT_MS", "1800000"));
+
+        JobStore store = new JobStore(c06Base, jobStoreMax, jobStoreTtlMs,
+                jobJournal.isBlank() ? null : Path.of(jobJournal));
+        // hop timestamps of the last TIMELINE_MAX jobs, for /api/jobs/{jobId}/timeline
+        Timelines timelines = new Timelines(Integer.parseInt(System.getenv().getOrDefault("TIMELINE_MAX", "10000")));
+        // per-job WS subscriptions; WS_QUEUE_MAX bounds each session's outbound queue
+        int wsQueueMax = Integer.parseInt(System.getenv().getOrDefault("WS_QUEUE_MAX", "64"));
+        WsHub wsHub = new WsHub(wsQueueMax, id -> finishedPayload(store, store.get(id)));
+
+        // "deflate" or "identity" for the job body; bodies under JMS_COMPRESS_MIN_BYTES go raw
+        String jmsEncoding = System.getenv().getOrDefault("JMS_ENCODING", PayloadCodec.DEFLATE);
+        int compressMinBytes = Integer.parseInt(System.getenv().getOrDefault("JMS_COMPRESS_MIN_BYTES", "65536"));
+
+        // claim-check: uploads of CLAIM_CHECK_MIN_BYTES or more go through the shared blob dir. Smaller ones
+        // travel inline in the JMS message and are the only uploads c01 holds on its heap; without BLOB_DIR
+        // larger ones are refused with 413. Capped at MAX_INLINE_BYTES, so a bad setting cannot lift the bound.
+        String blobDir = System.getenv().getOrDefault("BLOB_DIR", "");
+        long claimCheckMinBytes = Math.min(MAX_INLINE_BYTES,
+                Long.parseLong(System.getenv().getOrDefault("CLAIM_CHECK_MIN_BYTES", "1048576")));
+        // blobs are deleted when their job finishes; BLOB_TTL_MS only sweeps orphans, so keep it above the queue age
+        long blobTtlMs = Long.parseLong(System.getenv().getOrDefault("BLOB_TTL_MS", "86400000"));
+
+        String uploadSpoolDir = System.getenv().getOrDefault("UPLOAD_SPOOL_DIR", System.getProperty("java.io.tmpdir"));
+        int uploadMemoryBytes = Integer.parseInt(System.getenv().getOrDefault("UPLOAD_MEMORY_BYTES", "1048576"));
+
+        BlobStore blobs = blobDir.isBlank() ? null : new BlobStore(Path.of(blobDir), blobTtlMs);
+        if (blobs != null) blobs.startSweeper();
+
+        JmsClient jms = new JmsClient(brokerHost, brokerPort, jmsUser, jmsPass, bmpTopic, fastTopic, doneQueue,
+                jmsEncoding, compressMinBytes);
 
         // consumer for DONE notifications from C03
-        jms.startDoneConsumer((jobId, imageId) -> {
-            String downloadUrl = c06Base + "/images/" + imageId;
-            store.markDone(jobId, imageId, downloadUrl);
-
-            String payload = "{\"jobId\":\"" + jobId + "\",\"status\":\"DONE\",\"imageId\":" + imageId
-                    + ",\"downloadUrl\":\"" + downloadUrl + "\"}";
-
-            for (WsContext s : wsSessions) {
-                try { s.send(payload); } catch (Exception ignored) {}
-            }
+        jms.startDoneConsumer((jobId, imageId, timeline) -> {
+            Metrics.count("jobs_finished", "status", "done");
+            timelines.mark(jobId, "done");
+            timelines.c03(jobId, timeline);
+            JobStore.JobStatus st = store.markDone(jobId, imageId);
+            if (blobs != null) blobs.release(jobId);
+            // only enqueues for this job's subscribers; sends happen on Jetty's threads
+            if (st != null) wsHub.publish(jobId, finishedPayload(store, st));
+        }, (jobId, error, timeline) -> {
+            Metrics.count("jobs_finished", "status", "failed");
+            timelines.mark(jobId, "done");
+            timelines.c03(jobId, timeline);
+            JobStore.JobStatus st = store.markFailed(jobId, error);
+            if (blobs != null) blobs.release(jobId);
+            if (st != null) wsHub.publish(jobId, finishedPayload(store, st));
         });
 
+        if (jobTimeoutMs > 0) {
+            ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "c01-job-timeout");
+                t.setDaemon(true);
+                return t;
+            });
+            long every = Math.max(1000, Math.min(60_000, jobTimeoutMs / 10));
+            reaper.scheduleWithFixedDelay(() -> {
+                try {
+                    List<JobStore.JobStatus> expired = store.expirePending(jobTimeoutMs,
+                            "Timed out after " + jobTimeoutMs + " ms");
+                    for (JobStore.JobStatus st : expired) {
+                        Metrics.count("jobs_finished", "status", "timeout");
+                        wsHub.publish(st.jobId(), finishedPayload(store, st));
+                    }
+                    if (!expired.isEmpty()) System.out.println("C01: " + expired.size() + " job(s) timed out");
+                } catch (RuntimeException e) {
+                    System.out.println("C01: job timeout sweep failed: " + e.getMessage());
+                }
+            }, every, every, TimeUnit.MILLISECONDS);
+        }
+
         Javalin app = Javalin.create(cfg -> {
             cfg.staticFiles.add(staticFiles -> {
                 staticFiles.hostedPath = "/";
@@ -61,22 +191,38 @@ public class Main {
                 staticFiles.location = io.javalin.http.staticfiles.Location.CLASSPATH;
             });
             cfg.http.maxRequestSize = 200_000_000L; // 200MB
+            // multipart parts above UPLOAD_MEMORY_BYTES are spooled to disk by Jetty, not buffered
+            cfg.jetty.multipartConfig.cacheDirectory(uploadSpoolDir);
+            cfg.jetty.multipartConfig.maxInMemoryFileSize(uploadMemoryBytes, SizeUnit.BYTES);
+            cfg.jetty.multipartConfig.maxFileSize(200_000_000L, SizeUnit.BYTES);
+            cfg.jetty.multipartConfig.maxTotalRequestSize(200_000_000L, SizeUnit.BYTES);
             cfg.bundledPlugins.enableCors(cors -> cors.addRule(it -> it.anyHost()));
         });
 
         // WS for live updates (frontend: ws://localhost:8081/ws)
         app.ws("/ws", ws -> {
-            ws.onConnect(ctx -> wsSessions.add(ctx));
-            ws.onClose(ctx -> wsSessions.remove(ctx));
-            ws.onError(ctx -> wsSessions.remove(ctx));
+            ws.onConnect(wsHub::onConnect);
+            ws.onMessage(ctx -> wsHub.onMessage(ctx, ctx.message()));
+            ws.onClose(wsHub::onClose);
+            ws.onError(wsHub::onClose);
         });
 
         // health
         app.get("/health", ctx -> ctx.json(Map.of("ok", true)));
 
+        // JMS publish latency (call to broker acknowledgement)
+        app.get("/api/stats/jms", ctx -> ctx.json(PUBLISH_STAGE.summary()));
+
+        // Prometheus scrape target: per-stage latency histograms and job counters
+        app.get("/metrics", ctx -> ctx.contentType("text/plain; version=0.0.4; charset=utf-8").result(Metrics.scrape()));
+
         // create job: multipart file + params
         app.post("/api/jobs", ctx -> {
+            // upload_read: multipart parsing (Jetty reads or spools the body here) plus the payload read below
+            long t0 = System.nanoTime();
+            long receivedAt = System.currentTimeMillis();
             UploadedFile file = ctx.uploadedFile("file");
+            long uploadNanos = System.nanoTime() - t0;
             if (file == null) {
                 ctx.status(400).json(Map.of("error", "Missing multipart field 'file'"));
                 return;
@@ -88,27 +234,107 @@ public class Main {
 
             String percentStr = ctx.formParam("percent");
             if (percentStr == null || percentStr.isBlank()) percentStr = "20";
-            int percent = Integer.parseInt(percentStr);
-
-            String filename = (file.filename() == null || file.filename().isBlank()) ? "input.bmp" : file.filename();
-            byte[] bmpBytes = file.content().readAllBytes();
-
-            System.out.println("C01: filename=" + filename + " size=" + bmpBytes.length + " header=" + hex(bmpBytes, 16));
-
-            if (!isBmp(bmpBytes)) {
-                ctx.status(400).json(Map.of(
-                        "error", "Uploaded file is NOT a BMP. First bytes=" + hex(bmpBytes, 8)
-                ));
+            int percent;
+            try {
+                percent = Integer.parseInt(percentStr.trim());
+            } catch (NumberFormatException e) {
+                percent = -1;
+            }
+            int maxPercent = zoomIn ? maxZoomInPercent : 99;
+            if (percent < 1 || percent > maxPercent) {
+                ctx.status(400).json(Map.of("error", "percent must be an integer from 1 to " + maxPercent
+                        + (zoomIn ? " when zooming in" : " when zooming out")));
                 return;
             }
 
-            String jobId = UUID.randomUUID().toString();
-            store.markPending(jobId);
+            String mode = ctx.formParam("mode");
+            if (mode == null || mode.isBlank()) mode = "nearest";
+            mode = mode.trim().toLowerCase();
+            if (!RESAMPLING_MODES.contains(mode)) {
+                ctx.status(400).json(Map.of("error", "Unknown mode '" + mode + "', expected one of " + RESAMPLING_MODES));
+                return;
+            }
 
-            jms.publishBmpJob(jobId, zoomIn, percent, filename, bmpBytes);
-            System.out.println("IMAGE SENT");
+            String filename = (file.filename() == null || file.filename().isBlank()) ? "input.bmp" : file.filename();
+            long size = file.size();
+            if (blobs == null && size >= claimCheckMinBytes) {
+                ctx.status(413).json(Map.of("error", "Uploads of " + claimCheckMinBytes
+                        + " bytes or more need the blob store (BLOB_DIR), which is not configured"));
+                return;
+            }
 
-            ctx.json(Map.of("jobId", jobId, "status", "PENDING"));
+            // Jetty has already spooled large parts to UPLOAD_SPOOL_DIR; only the header is read up front
+            try (InputStream in = new BufferedInputStream(file.content(), 64 * 1024)) {
+                in.mark(BMP_HEADER_BYTES);
+                byte[] head = in.readNBytes(BMP_HEADER_BYTES);
+                in.reset();
+
+                System.out.println("C01: filename=" + filename + " size=" + size + " header=" + hex(head, 16));
+
+                t0 = System.nanoTime();
+                if (!isBmp(head)) {
+                    HEADER_STAGE.recordError();
+                    ctx.status(400).json(Map.of(
+                            "error", "Uploaded file is NOT a BMP. First bytes=" + hex(head, 8)
+                    ));
+                    return;
+                }
+                String invalid = checkBmpHeader(head, size);
+                if (invalid != null) {
+                    HEADER_STAGE.recordError();
+                    ctx.status(400).json(Map.of("error", invalid));
+                    return;
+                }
+                HEADER_STAGE.since(t0);
+
+                String jobId = UUID.randomUUID().toString();
+                store.markPending(jobId);
+                timelines.mark(jobId, "received", receivedAt);
+
+                // optional: the submitting page's WS session (from its "hello") gets this job's updates
+                String wsSession = ctx.formParam("wsSession");
+                if (wsSession != null && !wsSession.isBlank()) wsHub.subscribe(wsSession, jobId);
+
+                // small jobs take the fast lane so they never queue behind large ones
+                long cost = JobCost.estimate(head, zoomIn, percent, mode);
+                JobCost.Lane lane = JobCost.lane(cost, fastMaxCost);
+                int priority = JobCost.priority(lane, cost, fastMaxCost);
+
+                CompletableFuture<Void> sent;
+                long publishStart;
+                t0 = System.nanoTime();
+                if (blobs != null && size >= claimCheckMinBytes) {
+                    // copied from the spool file into the blob store, never held on the heap
+                    BlobStore.Blob blob = blobs.put(in, size, jobId);
+                    publishStart = System.nanoTime();
+                    UPLOAD_STAGE.record(uploadNanos + publishStart - t0);
+                    timelines.mark(jobId, "enqueued");
+                    sent = jms.publishBmpJobRef(jobId, lane, priority, zoomIn, percent, mode, filename, blob);
+                } else {
+                    // below claimCheckMinBytes (checked above), so at most MAX_INLINE_BYTES
+                    byte[] body = in.readNBytes((int) size);
+                    publishStart = System.nanoTime();
+                    UPLOAD_STAGE.record(uploadNanos + publishStart - t0);
+                    timelines.mark(jobId, "enqueued");
+                    sent = jms.publishBmpJob(jobId, lane, priority, zoomIn, percent, mode, filename, body);
+                }
+                Metrics.count("jobs", "lane", lane.id());
+                // async send: the job is PENDING now and turns FAILED if the broker never takes it
+                sent.whenComplete((v, err) -> {
+                    if (err == null) {
+                        PUBLISH_STAGE.since(publishStart);
+                        timelines.mark(jobId, "published");
+                        return;
+                    }
+                    PUBLISH_STAGE.recordError();
+                    if (blobs != null) blobs.release(jobId);
+                    JobStore.JobStatus failed = store.markFailed(jobId, "Publish failed: " + err.getMessage());
+                    if (failed != null) wsHub.publish(jobId, finishedPayload(store, failed));
+                });
+                System.out.println("IMAGE SENT");
+
+                ctx.json(Map.of("jobId", jobId, "status", "PENDING", "lane", lane.id()));
+            }
         });
 
         // polling status
@@ -120,16 +346,28 @@ public class Main {
                 ctx.status(404).json(Map.of("error", "Unknown jobId"));
                 return;
             }
-            if ("DONE".equals(st.status) && st.imageId != null) {
+            if (st.status == JobStore.Status.DONE && st.imageId() != null) {
                 ctx.json(Map.of(
-                        "jobId", st.jobId,
+                        "jobId", st.jobId(),
                         "status", "DONE",
-                        "imageId", st.imageId,
-                        "downloadUrl", st.downloadUrl
+                        "imageId", st.imageId(),
+                        "downloadUrl", store.downloadUrl(st)
                 ));
+            } else if (st.status == JobStore.Status.FAILED) {
+                ctx.json(Map.of("jobId", st.jobId(), "status", "FAILED", "error", String.valueOf(st.error)));
             } else {
-                ctx.json(Map.of("jobId", st.jobId, "status", st.status));
+                ctx.json(Map.of("jobId", st.jobId(), "status", st.status.name()));
+            }
+        });
+
+        // where the job's time went: c01, broker, c03, each worker band, c06 and back
+        app.get("/api/jobs/{jobId}/timeline", ctx -> {
+            Map<String, Object> t = timelines.get(ctx.pathParam("jobId"));
+            if (t == null) {
+                ctx.status(404).json(Map.of("error", "Unknown jobId or timeline no longer kept"));
+                return;
             }
+            ctx.json(t);
         });
 
         // redirect to C06 for download
@@ -141,11 +379,11 @@ public class Main {
                 ctx.status(404).json(Map.of("error", "Unknown jobId"));
                 return;
             }
-            if (!"DONE".equals(st.status) || st.imageId == null) {
+            if (st.status != JobStore.Status.DONE || st.imageId() == null) {
                 ctx.status(202).result("Not ready");
                 return;
             }
-            ctx.redirect(st.downloadUrl);
+            ctx.redirect(store.downloadUrl(st));
         });
 
         app.start("0.0.0.0", port);
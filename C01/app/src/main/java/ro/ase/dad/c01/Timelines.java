@@ -0,0 +1,122 @@
+package ro.ase.dad.c01;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hop-by-hop timelines of recent jobs, for GET /api/jobs/{jobId}/timeline.
+ *
+ * c01 records its own events: received (upload started), enqueued (handed to the JMS client),
+ * published (broker acknowledged) and done (c03's done or failed message consumed). c03 sends its
+ * part, including each band's worker times, as the "timeline" property of that message (see
+ * c03's JobTrace). Times are epoch milliseconds from each host's own clock, so a duration that
+ * spans two hosts is only as exact as their clock sync.
+ *
+ * Only the last maxEntries jobs are kept; timelines are not journaled like {@link JobStore}.
+ */
+public class Timelines {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final class Timeline {
+        final Map<String, Long> events = new LinkedHashMap<>();
+        String c03; // JSON from the done message
+    }
+
+    private final Map<String, Timeline> jobs; // guarded by this; insertion order
+
+    public Timelines(int maxEntries) {
+        int max = Math.max(1, maxEntries);
+        this.jobs = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Timeline> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    public void mark(String jobId, String event) {
+        mark(jobId, event, System.currentTimeMillis());
+    }
+
+    public synchronized void mark(String jobId, String event, long at) {
+        jobs.computeIfAbsent(jobId, k -> new Timeline()).events.put(event, at);
+    }
+
+    public synchronized void c03(String jobId, String timelineJson) {
+        if (timelineJson == null) return;
+        Timeline t = jobs.get(jobId);
+        if (t != null) t.c03 = timelineJson;
+    }
+
+    /** The job's events and the durations between them, or null for an unknown (or evicted) job. */
+    public Map<String, Object> get(String jobId) {
+        Map<String, Long> c01;
+        String c03Json;
+        synchronized (this) {
+            Timeline t = jobs.get(jobId);
+            if (t == null) return null;
+            c01 = new LinkedHashMap<>(t.events);
+            c03Json = t.c03;
+        }
+        JsonNode c03 = null;
+        try {
+            if (c03Json != null) c03 = JSON.readTree(c03Json);
+        } catch (Exception e) {
+            System.out.println("C01: bad timeline from c03 for " + jobId + ": " + e.getMessage());
+        }
+
+        Map<String, Object> durations = new LinkedHashMap<>();
+        between(durations, "upload", c01.get("received"), c01.get("enqueued"));
+        between(durations, "publish", c01.get("enqueued"), c01.get("published"));
+
+        List<Map<String, Object>> bands = new ArrayList<>();
+        if (c03 != null) {
+            // from the send itself: the asynchronous ack often comes after c03 already has the job
+            Long sent = time(c03, "jmsSent") != null ? time(c03, "jmsSent") : c01.get("enqueued");
+            between(durations, "brokerQueue", sent, time(c03, "dequeued"));
+            between(durations, "c03Read", time(c03, "dequeued"), time(c03, "read"));
+            between(durations, "compute", time(c03, "computeStart"), time(c03, "computeEnd"));
+            between(durations, "store", time(c03, "storeStart"), time(c03, "stored"));
+            between(durations, "doneQueue", time(c03, "doneSent"), c01.get("done"));
+
+            for (JsonNode b : c03.path("bands")) {
+                Map<String, Object> band = new LinkedHashMap<>();
+                band.put("worker", b.path("worker").asText());
+                band.put("ok", b.path("ok").asBoolean());
+                long call = b.path("returned").asLong() - b.path("sent").asLong();
+                band.put("callMs", call);
+                if (b.has("workerStart")) {
+                    long work = b.path("workerEnd").asLong() - b.path("workerStart").asLong();
+                    band.put("workerMs", work);
+                    // serialization, network and the worker's own queueing
+                    band.put("transferMs", call - work);
+                }
+                bands.add(band);
+            }
+        }
+        between(durations, "total", c01.get("received"), c01.get("done"));
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("jobId", jobId);
+        m.put("c01", c01);
+        if (c03 != null) m.put("c03", c03);
+        m.put("bands", bands);
+        m.put("durationsMs", durations);
+        return m;
+    }
+
+    private static Long time(JsonNode c03, String event) {
+        JsonNode n = c03.get(event);
+        return n == null || !n.canConvertToLong() ? null : n.asLong();
+    }
+
+    private static void between(Map<String, Object> out, String name, Long from, Long to) {
+        if (from != null && to != null) out.put(name, to - from);
+    }
+}
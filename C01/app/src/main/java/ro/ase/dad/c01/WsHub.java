@@ -0,0 +1,186 @@
+package ro.ase.dad.c01;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * WebSocket fan-out of job updates.
+ *
+ * A client only receives updates for jobs it subscribed to: either explicitly with
+ * {@code {"type":"subscribe","jobId":"..."}}, or by passing the session id it got in the
+ * {@code hello} message as {@code wsSession} when it submits a job. A finished job reaches only
+ * its subscribers.
+ *
+ * Publishing only enqueues. Each session has its own bounded outbound queue, keyed by job, so a
+ * newer update for a job replaces the queued one. Messages are written with Jetty's async
+ * sendString, one at a time per session. When a slow session's queue is full, its oldest entry is
+ * dropped. The client is then told how many updates it missed, so it can poll for them.
+ */
+public class WsHub {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int MAX_SUBSCRIPTIONS = 1000; // open subscriptions per session
+
+    private final int queueMax;
+    private final Function<String, String> currentStatus; // jobId -> payload if already finished, else null
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    private final Map<String, Set<Client>> subscribers = new ConcurrentHashMap<>();
+
+    public WsHub(int queueMax, Function<String, String> currentStatus) {
+        this.queueMax = Math.max(1, queueMax);
+        this.currentStatus = currentStatus;
+    }
+
+    public void onConnect(WsContext ctx) {
+        Client c = new Client(ctx);
+        clients.put(ctx.sessionId(), c);
+        c.enqueue("", "{\"type\":\"hello\",\"sessionId\":\"" + ctx.sessionId() + "\"}");
+    }
+
+    public void onClose(WsContext ctx) {
+        Client c = clients.remove(ctx.sessionId());
+        if (c != null) c.close();
+    }
+
+    public void onMessage(WsContext ctx, String text) {
+        try {
+            JsonNode msg = JSON.readTree(text);
+            String type = msg.path("type").asText("");
+            String jobId = msg.path("jobId").asText(null);
+            if (jobId == null || jobId.isBlank()) return;
+
+            if ("subscribe".equals(type)) {
+                subscribe(ctx.sessionId(), jobId);
+            } else if ("unsubscribe".equals(type)) {
+                Client c = clients.get(ctx.sessionId());
+                if (c != null) unsubscribe(c, jobId);
+            }
+        } catch (Exception e) {
+            System.out.println("C01: bad WS message from " + ctx.sessionId() + ": " + e.getMessage());
+        }
+    }
+
+    /** Subscribes a connected session to a job; returns false if the session is unknown. */
+    public boolean subscribe(String sessionId, String jobId) {
+        Client c = clients.get(sessionId);
+        if (c == null) return false;
+        if (c.jobs.size() >= MAX_SUBSCRIPTIONS && !c.jobs.contains(jobId)) return false;
+        subscribers.computeIfAbsent(jobId, k -> ConcurrentHashMap.newKeySet()).add(c);
+        c.jobs.add(jobId);
+
+        // the job may have finished before the subscription arrived
+        String done = currentStatus.apply(jobId);
+        if (done != null) publish(jobId, done);
+        return true;
+    }
+
+    /** Queues a final update for a job's subscribers; never blocks on the network. */
+    public void publish(String jobId, String payload) {
+        Set<Client> subs = subscribers.remove(jobId);
+        if (subs == null) return;
+        for (Client c : subs) {
+            c.jobs.remove(jobId);
+            if (!c.closed) c.enqueue(jobId, payload);
+        }
+    }
+
+    private void unsubscribe(Client c, String jobId) {
+        c.jobs.remove(jobId);
+        subscribers.computeIfPresent(jobId, (k, subs) -> {
+            subs.remove(c);
+            return subs.isEmpty() ? null : subs;
+        });
+    }
+
+    public int sessions() {
+        return clients.size();
+    }
+
+    private final class Client implements WriteCallback {
+        private final WsContext ctx;
+        private final LinkedHashMap<String, String> queue = new LinkedHashMap<>(); // jobId -> payload
+        final Set<String> jobs = ConcurrentHashMap.newKeySet();                   // subscribed, not yet published
+        private boolean sending;   // guarded by this
+        private int dropped;       // guarded by this
+        volatile boolean closed;
+
+        Client(WsContext ctx) {
+            this.ctx = ctx;
+        }
+
+        void enqueue(String key, String payload) {
+            synchronized (this) {
+                queue.remove(key); // coalesce: keep only the newest update per job, at the tail
+                queue.put(key, payload);
+                if (queue.size() > queueMax) {
+                    Iterator<String> it = queue.keySet().iterator();
+                    it.next();
+                    it.remove();
+                    dropped++;
+                }
+                if (sending) return;
+                sending = true;
+            }
+            sendNext();
+        }
+
+        private void sendNext() {
+            String next;
+            synchronized (this) {
+                if (closed) {
+                    queue.clear();
+                    sending = false;
+                    return;
+                }
+                if (dropped > 0) {
+                    next = "{\"type\":\"dropped\",\"count\":" + dropped + "}";
+                    dropped = 0;
+                } else {
+                    Iterator<Map.Entry<String, String>> it = queue.entrySet().iterator();
+                    if (!it.hasNext()) {
+                        sending = false;
+                        return;
+                    }
+                    next = it.next().getValue();
+                    it.remove();
+                }
+            }
+            try {
+                ctx.session.getRemote().sendString(next, this);
+            } catch (Exception e) {
+                writeFailed(e);
+            }
+        }
+
+        void close() {
+            closed = true;
+            for (String jobId : jobs) unsubscribe(this, jobId);
+        }
+
+        @Override
+        public void writeSuccess() {
+            sendNext();
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            System.out.println("C01: WS send to " + ctx.sessionId() + " failed: " + x.getMessage());
+            clients.remove(ctx.sessionId(), this);
+            close();
+            synchronized (this) {
+                queue.clear();
+                sending = false;
+            }
+        }
+    }
+}
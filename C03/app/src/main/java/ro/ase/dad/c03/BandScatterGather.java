@@ -0,0 +1,370 @@
+package ro.ase.dad.c03;
+
+import ro.ase.dad.rmi.BandRequest;
+import ro.ase.dad.rmi.ZoomResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends all band requests of a job to the RMI workers at once and gathers
+ * the zoomed bands as they come back.
+ *
+ * The executor is shared by every MDB instance and has a fixed number of threads, so a burst
+ * of jobs cannot open an unbounded number of RMI connections. Each job keeps at most
+ * RMI_BANDS_PER_JOB bands queued or running and submits the next one as a band finishes, so the
+ * queue holds at most that many bands per MDB session. Bands always run on the executor, never on
+ * the MDB thread, so they can be timed out and cancelled with their job. Each band has
+ * RMI_BAND_TIMEOUT_MS from when it is submitted; the whole job has RMI_JOB_TIMEOUT_MS, which also
+ * bounds the time its later bands wait for a slot in the window.
+ * The fast lane has an executor of its own (RMI_FAST_BAND_THREADS), so its bands never
+ * queue behind the bands of large batch jobs.
+ */
+public class BandScatterGather {
+
+    private static final int  POOL_SIZE    = getint("RMI_BAND_THREADS", 8);
+    // 0 => as many as the lane's band threads
+    private static final int  BANDS_PER_JOB = getint("RMI_BANDS_PER_JOB", 0);
+    private static final long BAND_TIMEOUT = getint("RMI_BAND_TIMEOUT_MS", 120_000);
+    private static final long JOB_TIMEOUT  = getint("RMI_JOB_TIMEOUT_MS", 600_000);
+
+    private static final ThreadPoolExecutor BATCH_EXECUTOR = newExecutor("c03-rmi-band-", POOL_SIZE);
+    private static final ThreadPoolExecutor FAST_EXECUTOR =
+            newExecutor("c03-rmi-fast-band-", getint("RMI_FAST_BAND_THREADS", 4));
+
+    // Hedging of straggling bands (off unless RMI_HEDGE=true)
+    private static final boolean HEDGE = Boolean.parseBoolean(System.getenv().getOrDefault("RMI_HEDGE", "false"));
+    private static final int HEDGE_MAX_PER_JOB = getint("RMI_HEDGE_MAX_PER_JOB", 2);
+    private static final int HEDGE_MIN_MS = getint("RMI_HEDGE_MIN_MS", 50);
+    private static final int HEDGE_MIN_SAMPLES = 20;
+
+    // band latency scaled to 1 MiB of input, so one p95 serves bands of every size; not exported
+    private static final Metrics.Histogram NANOS_PER_MIB = new Metrics.Histogram();
+    private static final AtomicLong HEDGES_SENT = new AtomicLong();
+    private static final AtomicLong HEDGES_WON = new AtomicLong();
+
+    private static final ScheduledExecutorService HEDGER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "c03-rmi-hedge");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public static class Band {
+        public final WorkerRegistry.Worker worker;
+        public final BandRequest request;
+        final JobTrace trace; // null: untraced call
+
+        public Band(WorkerRegistry.Worker worker, BandRequest request) {
+            this(worker, request, null);
+        }
+
+        /** A band whose calls (hedges and retries included) go into {@code trace}. */
+        public Band(WorkerRegistry.Worker worker, BandRequest request, JobTrace trace) {
+            this.worker = worker;
+            this.request = request;
+            this.trace = trace;
+        }
+    }
+
+    private final RmiZoomClient rmi;
+    private final ThreadPoolExecutor executor;
+    private final int window;
+
+    public BandScatterGather(RmiZoomClient rmi) {
+        this(rmi, false);
+    }
+
+    public BandScatterGather(RmiZoomClient rmi, boolean fastLane) {
+        this.rmi = rmi;
+        this.executor = fastLane ? FAST_EXECUTOR : BATCH_EXECUTOR;
+        this.window = Math.max(1, BANDS_PER_JOB > 0 ? BANDS_PER_JOB : executor.getMaximumPoolSize());
+    }
+
+    /**
+     * Zooms every band concurrently. The returned array is indexed like {@code bands}; each result
+     * holds the band's zoomed pixel rows (see {@link RmiZoomClient#zoomBand}).
+     * A band whose worker fails is retried once on another one; the worker is also drained when it
+     * could not be reached ({@link RmiZoomClient#transportFailure}). Bad input is not retried.
+     * If a band still fails or times out the others are cancelled and the error is rethrown.
+     * With RMI_HEDGE on, straggling bands are also hedged (see {@link #zoomAllHedged}).
+     */
+    public ZoomResult[] zoomAll(List<Band> bands) throws Exception {
+        if (HEDGE) return zoomAllHedged(bands);
+
+        List<Callable<ZoomResult>> tasks = new ArrayList<>(bands.size());
+        for (Band b : bands) {
+            tasks.add(() -> zoomWithFailover(b));
+        }
+        return gather(tasks).toArray(new ZoomResult[0]);
+    }
+
+    /**
+     * Like {@link #zoomAll}, but a band still running after the recent p95 band latency (scaled to
+     * its size, counted from when the band starts running) gets a duplicate request on another worker. The first result wins; the other
+     * attempt is cancelled. At most RMI_HEDGE_MAX_PER_JOB duplicates are sent per job, and none
+     * while the band executor has no idle thread, so hedging cannot add load to an overloaded node.
+     * An RMI call cannot be aborted, so a cancelled attempt still runs to the end on its worker;
+     * its result is dropped.
+     */
+    private ZoomResult[] zoomAllHedged(List<Band> bands) throws Exception {
+        int n = bands.size();
+        AtomicInteger budget = new AtomicInteger(HEDGE_MAX_PER_JOB);
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        List<CompletableFuture<ZoomResult>> results = new ArrayList<>(n);
+        List<Future<?>> attempts = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> timers = Collections.synchronizedList(new ArrayList<>());
+        Semaphore slots = new Semaphore(window);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JOB_TIMEOUT);
+
+        try {
+            for (Band b : bands) {
+                // a slot is freed when a band of this job completes (or fails, which also completes failed)
+                long left = deadline - System.nanoTime();
+                if (failed.isDone() || left <= 0 || !slots.tryAcquire(left, TimeUnit.NANOSECONDS)) break;
+
+                CompletableFuture<ZoomResult> result = new CompletableFuture<ZoomResult>()
+                        .orTimeout(BAND_TIMEOUT, TimeUnit.MILLISECONDS);
+                result.whenComplete((v, err) -> {
+                    slots.release();
+                    if (err != null) failed.completeExceptionally(err);
+                });
+                results.add(result);
+
+                AtomicInteger running = new AtomicInteger(1);
+                attempts.add(executor.submit(() -> {
+                    if (result.isDone()) return;
+                    long delay = hedgeDelayNanos(b.request.payload.length);
+                    if (delay > 0) {
+                        timers.add(HEDGER.schedule(() -> hedge(b, result, running, budget, attempts),
+                                delay, TimeUnit.NANOSECONDS));
+                    }
+                    attempt(b, null, result, running);
+                }));
+            }
+
+            CompletableFuture<Void> all = CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]));
+            try {
+                long left = Math.max(0, deadline - System.nanoTime());
+                CompletableFuture.anyOf(all, failed).get(left, TimeUnit.NANOSECONDS);
+                if (results.size() < n) throw new TimeoutException();
+            } catch (TimeoutException e) {
+                throw jobTimeout(results.stream().filter(f -> f.isDone() && !f.isCompletedExceptionally()).count(), n);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof TimeoutException) {
+                    throw bandTimeout(results.stream().filter(f -> f.isDone() && !f.isCompletedExceptionally()).count(), n);
+                }
+                if (cause instanceof Exception) throw (Exception) cause;
+                throw e;
+            }
+
+            ZoomResult[] out = new ZoomResult[n];
+            for (int i = 0; i < n; i++) out[i] = results.get(i).getNow(null);
+            return out;
+        } finally {
+            // a band that has not started yet must not start or hedge once the job gave up on it
+            for (CompletableFuture<ZoomResult> r : results) r.cancel(false);
+            synchronized (timers) {
+                for (Future<?> t : timers) t.cancel(false);
+            }
+            synchronized (attempts) {
+                for (Future<?> f : attempts) {
+                    if (!f.isDone()) f.cancel(true);
+                }
+            }
+        }
+    }
+
+    /** One attempt at a band: the primary (with failover) when {@code hedgeOn} is null, else a duplicate. */
+    private void attempt(Band b, WorkerRegistry.Worker hedgeOn, CompletableFuture<ZoomResult> result, AtomicInteger running) {
+        try {
+            ZoomResult out = hedgeOn == null ? zoomWithFailover(b) : zoomOn(hedgeOn, b);
+            if (result.complete(out) && hedgeOn != null) {
+                HEDGES_WON.incrementAndGet();
+                System.out.println("C03: hedged band on " + hedgeOn.address + " beat " + b.worker.address);
+            }
+        } catch (Exception e) {
+            // the band only fails when no other attempt is still running
+            if (running.decrementAndGet() == 0) result.completeExceptionally(e);
+        }
+    }
+
+    private void hedge(Band b, CompletableFuture<ZoomResult> result, AtomicInteger running, AtomicInteger budget,
+                       List<Future<?>> attempts) {
+        if (result.isDone() || executor.getActiveCount() >= executor.getMaximumPoolSize()
+                || !executor.getQueue().isEmpty()) return;
+        WorkerRegistry.Worker other = WorkerRegistry.get().pickOther(b.worker);
+        if (other == null || budget.getAndDecrement() <= 0) return;
+
+        // counted before the check below, so a primary failing right now waits for this attempt
+        running.incrementAndGet();
+        if (result.isDone()) return;
+        HEDGES_SENT.incrementAndGet();
+        System.out.println("C03: band on " + b.worker.address + " is straggling, hedging on " + other.address);
+        attempts.add(executor.submit(() -> attempt(b, other, result, running)));
+    }
+
+    /** How long a band of {@code bytes} may run before it is hedged, or -1 while there are too few samples. */
+    private static long hedgeDelayNanos(int bytes) {
+        if (NANOS_PER_MIB.count() < HEDGE_MIN_SAMPLES) return -1;
+        double p95 = NANOS_PER_MIB.quantileNanos(0.95) * (bytes / (double) (1 << 20));
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(HEDGE_MIN_MS), (long) p95);
+    }
+
+    /** Hedging counters for the stats endpoint. */
+    public static Map<String, Object> hedgeStats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", HEDGE);
+        m.put("maxPerJob", HEDGE_MAX_PER_JOB);
+        m.put("samples", NANOS_PER_MIB.count());
+        m.put("p95MsPerMiB", NANOS_PER_MIB.quantileNanos(0.95) / 1e6);
+        m.put("sent", HEDGES_SENT.get());
+        m.put("won", HEDGES_WON.get());
+        return m;
+    }
+
+    private ZoomResult zoomWithFailover(Band b) throws Exception {
+        try {
+            return zoomOn(b.worker, b);
+        } catch (IllegalArgumentException | InterruptedException e) {
+            // the same bytes fail the same way on every worker
+            throw e;
+        } catch (Exception e) {
+            if (RmiZoomClient.transportFailure(e)) WorkerRegistry.get().drain(b.worker, e);
+            WorkerRegistry.Worker other = WorkerRegistry.get().pickOther(b.worker);
+            if (other == null) throw e;
+            System.out.println("C03: retrying band on " + other.address);
+            return zoomOn(other, b);
+        }
+    }
+
+    private ZoomResult zoomOn(WorkerRegistry.Worker w, Band b) throws Exception {
+        int bytes = b.request.payload.length;
+        long t0 = System.nanoTime();
+        long sent = System.currentTimeMillis();
+        ZoomResult out = null;
+        boolean ok = false;
+        w.begin();
+        try {
+            out = rmi.zoomBand(w.address.host, w.address.port, b.request);
+            ok = true;
+            NANOS_PER_MIB.record((long) ((System.nanoTime() - t0) * ((1 << 20) / (double) Math.max(1, bytes))));
+            return out;
+        } finally {
+            long nanos = System.nanoTime() - t0;
+            w.end(bytes, nanos, ok);
+            Metrics.Histogram band = Metrics.stage("rmi_band", "worker", w.address.toString());
+            if (ok) band.record(nanos); else band.recordError();
+            if (b.trace != null) {
+                b.trace.band(w.address.toString(), sent, out == null ? 0 : out.startedAt,
+                        out == null ? 0 : out.finishedAt, System.currentTimeMillis(), ok);
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks on the shared band executor, at most RMI_BANDS_PER_JOB at a time, and collects
+     * their results as they complete. The list is indexed like {@code tasks}. On the first failure,
+     * when a task is still running RMI_BAND_TIMEOUT_MS after it was submitted, or when the job
+     * passes RMI_JOB_TIMEOUT_MS, the remaining tasks are cancelled and the error is rethrown.
+     */
+    public <T> List<T> gather(List<Callable<T>> tasks) throws Exception {
+        int n = tasks.size();
+        List<T> results = new ArrayList<>(Collections.nCopies(n, null));
+
+        LinkedBlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+        List<CompletableFuture<T>> bands = new ArrayList<>(n);
+        List<Future<?>> runs = new ArrayList<>(n);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(JOB_TIMEOUT);
+
+        try {
+            int submitted = 0;
+            for (int done = 0; done < n; done++) {
+                while (submitted < n && submitted - done < window) {
+                    final int idx = submitted++;
+                    final Callable<T> task = tasks.get(idx);
+                    CompletableFuture<T> band = new CompletableFuture<T>().orTimeout(BAND_TIMEOUT, TimeUnit.MILLISECONDS);
+                    band.whenComplete((v, err) -> completed.add(idx));
+                    bands.add(band);
+                    runs.add(executor.submit(() -> {
+                        try {
+                            band.complete(task.call());
+                        } catch (Throwable e) {
+                            band.completeExceptionally(e);
+                        }
+                    }));
+                }
+
+                long left = deadline - System.nanoTime();
+                Integer next = left > 0 ? completed.poll(left, TimeUnit.NANOSECONDS) : null;
+                if (next == null) throw jobTimeout(done, n);
+                try {
+                    results.set(next, bands.get(next).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof TimeoutException) throw bandTimeout(done, n);
+                    if (cause instanceof Exception) throw (Exception) cause;
+                    throw e;
+                }
+            }
+            return results;
+        } finally {
+            for (CompletableFuture<T> b : bands) b.cancel(false);
+            for (Future<?> r : runs) {
+                if (!r.isDone()) r.cancel(true);
+            }
+        }
+    }
+
+    private static TimeoutException bandTimeout(long done, int n) {
+        return new TimeoutException("RMI band not done " + BAND_TIMEOUT + " ms after it was sent ("
+                + done + "/" + n + " returned)");
+    }
+
+    private static TimeoutException jobTimeout(long done, int n) {
+        return new TimeoutException("RMI bands not done after " + JOB_TIMEOUT + " ms ("
+                + done + "/" + n + " returned)");
+    }
+
+    private static ThreadPoolExecutor newExecutor(String namePrefix, int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor ex = new ThreadPoolExecutor(
+                threads, threads,
+                60, TimeUnit.SECONDS,
+                // bounded by the per-job window times the MDB sessions, so it never rejects
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, namePrefix + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        ex.allowCoreThreadTimeOut(true);
+        return ex;
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
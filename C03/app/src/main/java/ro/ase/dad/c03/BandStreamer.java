@@ -0,0 +1,159 @@
+package ro.ase.dad.c03;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming variant of the band path for nearest-neighbour jobs.
+ *
+ * Each band is opened as a stream session on a worker and its source rows are sent
+ * in chunks of about STREAM_CHUNK_BYTES. The rows each chunk completes come back right
+ * away and are copied into the final image, which is allocated once up front; no band
+ * BMP files are built and no merge pass runs afterwards. Each band keeps STREAM_IN_FLIGHT
+ * chunks in flight, so the next chunk is already on the wire while the worker zooms the
+ * current one; RMI buffers still stay at a few chunks even for very large images.
+ */
+public class BandStreamer {
+
+    private static final int CHUNK_BYTES = getint("STREAM_CHUNK_BYTES", 1024 * 1024);
+    private static final int IN_FLIGHT = Math.max(1, getint("STREAM_IN_FLIGHT", 3));
+
+    // Runs the blocking pushRows calls; at most IN_FLIGHT per band thread are busy at a time.
+    private static final ExecutorService PUSHERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "c03-stream-push-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final RmiZoomClient rmi;
+    private final BandScatterGather scatter;
+
+    public BandStreamer(RmiZoomClient rmi, BandScatterGather scatter) {
+        this.rmi = rmi;
+        this.scatter = scatter;
+    }
+
+    /**
+     * Zooms {@code src} as up to {@code workers.size()} streamed bands, band i on {@code workers.get(i)}.
+     * Bands are cut on destination rows and zoomed with the whole image's geometry, as in
+     * {@link BmpSplitMerge#splitForZoom}, so they join without seams.
+     */
+    public byte[] zoom(BmpView src, List<WorkerRegistry.Worker> workers,
+                       int percent, boolean zoomIn) throws Exception {
+        double factor = BmpSplitMerge.factor(percent, zoomIn);
+        int dstW = BmpSplitMerge.scaled(src.width, factor);
+        int dstH = BmpSplitMerge.scaled(src.absHeight, factor);
+        src.newImageSize(dstW, dstH);
+        int bandCount = Math.max(1, Math.min(workers.size(), dstH));
+
+        List<RmiZoomClient.Stream> streams = new ArrayList<>(bandCount);
+        try {
+            int[][] srcRows = new int[bandCount][];
+            for (int i = 0; i < bandCount; i++) {
+                int dstY0 = BmpSplitMerge.bandStart(dstH, bandCount, i);
+                int dstY1 = BmpSplitMerge.bandStart(dstH, bandCount, i + 1);
+                srcRows[i] = BmpSplitMerge.sourceRows(src.absHeight, factor, "nearest", dstY0, dstY1);
+                RmiWorker w = workers.get(i).address;
+                RmiZoomClient.Stream s = rmi.openStream(w.host, w.port, src.width, src.absHeight, src.bpp,
+                        srcRows[i][0], dstY0, dstY1, percent, zoomIn);
+                streams.add(s);
+                if (s.dstW != dstW || s.dstH != dstY1 - dstY0) throw new IllegalStateException("Band size mismatch");
+            }
+
+            byte[] out = src.newFile(dstW, dstH, src.topDown);
+            BmpView dst = BmpView.of(out);
+
+            List<Callable<Void>> tasks = new ArrayList<>(bandCount);
+            for (int i = 0; i < bandCount; i++) {
+                final int band = i;
+                tasks.add(() -> {
+                    int y0 = srcRows[band][0];
+                    int y1 = srcRows[band][1];
+                    WorkerRegistry.Worker w = workers.get(band);
+                    long t0 = System.nanoTime();
+                    boolean ok = false;
+                    w.begin();
+                    try {
+                        streamBand(src, dst, streams.get(band), y0, y1,
+                                BmpSplitMerge.bandStart(dstH, bandCount, band));
+                        ok = true;
+                    } catch (Exception e) {
+                        if (RmiZoomClient.transportFailure(e)) WorkerRegistry.get().drain(w, e);
+                        throw e;
+                    } finally {
+                        long nanos = System.nanoTime() - t0;
+                        w.end((long) (y1 - y0) * src.rowStride, nanos, ok);
+                        Metrics.Histogram range = Metrics.stage("rmi_stream", "worker", w.address.toString());
+                        if (ok) range.record(nanos); else range.recordError();
+                    }
+                    return null;
+                });
+            }
+            scatter.gather(tasks);
+            return out;
+        } finally {
+            for (RmiZoomClient.Stream s : streams) s.close();
+        }
+    }
+
+    private static void streamBand(BmpView src, BmpView dst, RmiZoomClient.Stream s,
+                                   int y0, int y1, int dstY) throws Exception {
+        int rowsPerChunk = Math.max(1, CHUNK_BYTES / src.rowStride);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>(IN_FLIGHT);
+        int produced = 0;
+        int y = y0;
+        try {
+            while (y < y1 || !pending.isEmpty()) {
+                while (y < y1 && pending.size() < IN_FLIGHT) {
+                    int n = Math.min(rowsPerChunk, y1 - y);
+                    byte[] chunk = new byte[n * src.rowStride];
+                    src.copyVisualRows(y, n, chunk, 0);
+                    pending.add(s.push(chunk, PUSHERS));
+                    y += n;
+                }
+
+                // answers are placed in push order; the worker produced them in that order too
+                byte[] rows;
+                try {
+                    rows = pending.remove().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) throw (Exception) cause;
+                    throw e;
+                }
+                int got = rows.length / dst.rowStride;
+                if (produced + got > s.dstH) throw new IllegalStateException("Worker returned too many rows");
+                dst.putVisualRows(dstY + produced, got, rows, 0);
+                produced += got;
+            }
+        } finally {
+            for (Future<byte[]> f : pending) f.cancel(true);
+        }
+        if (produced != s.dstH) {
+            throw new IllegalStateException("Stream ended after " + produced + "/" + s.dstH + " rows");
+        }
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ro.ase.dad.c03;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Read side of the claim-check blob store written by c01 ({@code <BLOB_DIR>/<ab>/<sha256 hex>}).
+ * Blobs are memory-mapped read-only, so the pixels are read straight from the page cache.
+ * c03 never deletes a blob: c01 does once the job's done or failed message arrives.
+ */
+public class BlobReader {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+    private final boolean verify;
+
+    public BlobReader(Path dir, boolean verify) {
+        this.dir = dir;
+        this.verify = verify;
+    }
+
+    /** Maps the blob and checks its size (and sha256 when verification is on). */
+    public ByteBuffer map(String key, long size, String sha256) throws IOException {
+        if (key == null || !KEY.matcher(key).matches()) throw new IllegalArgumentException("Invalid blob key: " + key);
+        Path file = dir.resolve(key.substring(0, 2)).resolve(key);
+
+        MappedByteBuffer mapped;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() != size) {
+                throw new IOException("Blob " + key + " has " + ch.size() + " bytes, expected " + size);
+            }
+            mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        if (verify && sha256 != null) {
+            MessageDigest md = sha256();
+            md.update(mapped.duplicate());
+            String actual = HexFormat.of().formatHex(md.digest());
+            if (!actual.equalsIgnoreCase(sha256)) throw new IOException("Blob " + key + " checksum mismatch: " + actual);
+        }
+        return mapped;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
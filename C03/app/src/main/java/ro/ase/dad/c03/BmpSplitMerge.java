@@ -1,152 +1,208 @@
 package ro.ase.dad.c03;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import ro.ase.dad.rmi.BandRequest;
+import ro.ase.dad.rmi.ZoomResult;
 
 public class BmpSplitMerge {
 
-    static class Parsed {
-        byte[] header;
-        int dataOffset;
-        int width;
-        int height;        // signed
-        int absHeight;
-        boolean topDown;
-        int bpp;
-        int compression;
-        int rowStride;
-        byte[] pixels;
-    }
-
-    static Parsed parse(byte[] bmpBytes) {
-        if (bmpBytes == null || bmpBytes.length < 54) throw new IllegalArgumentException("Invalid BMP");
-        if (bmpBytes[0] != 'B' || bmpBytes[1] != 'M') throw new IllegalArgumentException("Not a BMP");
-
-        ByteBuffer bb = ByteBuffer.wrap(bmpBytes).order(ByteOrder.LITTLE_ENDIAN);
-
-        int dataOffset = bb.getInt(10);
-        int dibSize = bb.getInt(14);
-        if (dibSize < 40) throw new IllegalArgumentException("Unsupported DIB: " + dibSize);
-
-        int width = bb.getInt(18);
-        int height = bb.getInt(22);
-        short planes = bb.getShort(26);
-        short bpp = bb.getShort(28);
-        int compression = bb.getInt(30);
-
-        if (planes != 1) throw new IllegalArgumentException("Invalid planes");
-        if (!(bpp == 24 || bpp == 32)) throw new IllegalArgumentException("Unsupported bpp " + bpp);
-        if (compression != 0) throw new IllegalArgumentException("Unsupported compression " + compression);
+    private static final long BAND_TARGET_BYTES = getlong("BAND_TARGET_BYTES", 8L * 1024 * 1024);
+    private static final int  BANDS_PER_WORKER  = (int) getlong("BANDS_PER_WORKER", 4);
+    private static final int  MIN_BAND_ROWS     = (int) getlong("MIN_BAND_ROWS", 16);
 
-        boolean topDown = height < 0;
-        int absHeight = Math.abs(height);
-
-        int bytesPerPixel = bpp / 8;
-        int rowNoPad = width * bytesPerPixel;
-        int rowStride = ((rowNoPad + 3) / 4) * 4;
-
-        int pixelsLen = rowStride * absHeight;
-        if (dataOffset + pixelsLen > bmpBytes.length) throw new IllegalArgumentException("Pixel data out of range");
-
-        Parsed p = new Parsed();
-        p.dataOffset = dataOffset;
-        p.width = width;
-        p.height = height;
-        p.absHeight = absHeight;
-        p.topDown = topDown;
-        p.bpp = bpp;
-        p.compression = compression;
-        p.rowStride = rowStride;
-
-        p.header = new byte[dataOffset];
-        System.arraycopy(bmpBytes, 0, p.header, 0, dataOffset);
+    public static class Split {
+        public byte[] topBmp;
+        public byte[] bottomBmp;
+    }
 
-        p.pixels = new byte[pixelsLen];
-        System.arraycopy(bmpBytes, dataOffset, p.pixels, 0, pixelsLen);
+    public static Split splitHalf(byte[] bmpBytes) {
+        byte[][] bands = splitBands(bmpBytes, 2);
+        Split s = new Split();
+        s.topBmp = bands[0];
+        s.bottomBmp = bands[1];
+        return s;
+    }
 
-        return p;
+    public static byte[] mergeVertical(byte[] topBmp, byte[] bottomBmp) {
+        return mergeBands(new byte[][]{topBmp, bottomBmp});
     }
 
-    static byte[] build(Parsed base, int newAbsHeight, boolean topDown, byte[] newPixels) {
-        byte[] header = base.header.clone();
-        ByteBuffer hb = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+    /**
+     * Picks how many horizontal bands an image is cut into: at least one per worker,
+     * more when the pixel data is larger than BAND_TARGET_BYTES per band, but never
+     * more than BANDS_PER_WORKER per worker or bands thinner than MIN_BAND_ROWS rows.
+     */
+    public static int chooseBandCount(int absHeight, int rowStride, int workers) {
+        long pixelBytes = (long) rowStride * absHeight;
+        int w = Math.max(1, workers);
+
+        long bySize = (pixelBytes + BAND_TARGET_BYTES - 1) / BAND_TARGET_BYTES;
+        long n = Math.max(w, bySize);
+        n = Math.min(n, (long) w * BANDS_PER_WORKER);
+        n = Math.min(n, Math.max(1, absHeight / MIN_BAND_ROWS));
+        return (int) Math.max(1, n);
+    }
 
-        int signedH = topDown ? -newAbsHeight : newAbsHeight;
-        int newImageSize = newPixels.length;
-        int newFileSize = header.length + newImageSize;
+    public static int chooseBandCount(BmpView v, int workers) {
+        return chooseBandCount(v.absHeight, v.rowStride, workers);
+    }
 
-        hb.putInt(2, newFileSize);
-        hb.putInt(18, base.width);
-        hb.putInt(22, signedH);
-        hb.putInt(34, newImageSize);
+    public static byte[][] splitBands(byte[] bmpBytes, int n) {
+        return splitBands(BmpView.of(bmpBytes), n);
+    }
 
-        byte[] out = new byte[newFileSize];
-        System.arraycopy(header, 0, out, 0, header.length);
-        System.arraycopy(newPixels, 0, out, header.length, newPixels.length);
+    /**
+     * Cuts the image into {@code n} horizontal bands, ordered top to bottom as the image is seen.
+     * Every band keeps the orientation of the source. Because a band is a run of whole rows,
+     * its pixels are one contiguous block of the source for both top-down and bottom-up files,
+     * copied once straight into the band's file array.
+     */
+    public static byte[][] splitBands(BmpView v, int n) {
+        if (n < 1 || n > v.absHeight) throw new IllegalArgumentException("Invalid band count " + n);
+
+        byte[][] out = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            int y0 = bandStart(v.absHeight, n, i);
+            int y1 = bandStart(v.absHeight, n, i + 1);
+            int h = y1 - y0;
+
+            int firstFileRow = v.topDown ? y0 : (v.absHeight - y1);
+            byte[] band = v.newFile(v.width, h, v.topDown);
+            v.copyRows(firstFileRow, h, band, v.dataOffset);
+            out[i] = band;
+        }
         return out;
     }
 
-    public static class Split {
-        public byte[] topBmp;
-        public byte[] bottomBmp;
+    /**
+     * Cuts a zoom of {@code v} into {@code n} bands of the zoomed image: band i produces destination
+     * rows [bandStart(dstH, n, i), bandStart(dstH, n, i + 1)), top to bottom. Each request carries the
+     * source rows those rows read ({@link #sourceRows}), copied once as one block in the image's file
+     * order, and the whole image's geometry, so the worker zooms them exactly as it would zoom the
+     * unsplit image. Fewer than {@code n} bands come back when the zoomed image has fewer rows.
+     */
+    public static BandRequest[] splitForZoom(BmpView v, int n, int percent, boolean zoomIn, String mode, String jobId) {
+        double factor = factor(percent, zoomIn);
+        int dstH = scaled(v.absHeight, factor);
+        v.newImageSize(scaled(v.width, factor), dstH); // refuse before any band is sent if it cannot be assembled
+        n = Math.max(1, Math.min(n, dstH));
+
+        BandRequest[] out = new BandRequest[n];
+        for (int i = 0; i < n; i++) {
+            int dstY0 = bandStart(dstH, n, i);
+            int dstY1 = bandStart(dstH, n, i + 1);
+            int[] src = sourceRows(v.absHeight, factor, mode, dstY0, dstY1);
+            int rows = src[1] - src[0];
+
+            // a run of whole rows is one contiguous block for both top-down and bottom-up files
+            byte[] payload = new byte[rows * v.rowStride];
+            v.copyRows(v.topDown ? src[0] : v.absHeight - src[1], rows, payload, 0);
+            out[i] = new BandRequest(payload, null, v.width, v.height, v.bpp, src[0], dstY0, dstY1,
+                    percent, zoomIn, mode, jobId);
+        }
+        return out;
     }
 
-    public static Split splitHalf(byte[] bmpBytes) {
-        Parsed p = parse(bmpBytes);
-
-        int topH = p.absHeight / 2;
-        int bottomH = p.absHeight - topH;
-
-        byte[] topPixels = new byte[p.rowStride * topH];
-        byte[] bottomPixels = new byte[p.rowStride * bottomH];
-
-        for (int visualY = 0; visualY < p.absHeight; visualY++) {
-            int srcRowIndexInFile = p.topDown ? visualY : (p.absHeight - 1 - visualY);
-            int srcBase = srcRowIndexInFile * p.rowStride;
-
-            if (visualY < topH) {
-                int dstVisualY = visualY;
-                int dstRowIndexInFile = p.topDown ? dstVisualY : (topH - 1 - dstVisualY);
-                System.arraycopy(p.pixels, srcBase, topPixels, dstRowIndexInFile * p.rowStride, p.rowStride);
-            } else {
-                int dstVisualY = visualY - topH;
-                int dstRowIndexInFile = p.topDown ? dstVisualY : (bottomH - 1 - dstVisualY);
-                System.arraycopy(p.pixels, srcBase, bottomPixels, dstRowIndexInFile * p.rowStride, p.rowStride);
-            }
-        }
+    /**
+     * Source rows [first, last) that destination rows [dstY0, dstY1) read. The workers' filters read
+     * around floor(y / factor): nearest only that row, area and bilinear one more on either side,
+     * bicubic two; one extra row on each side covers rounding. The worker checks the rows it got
+     * against its exact taps and rejects the band if one is missing.
+     */
+    static int[] sourceRows(int srcH, double factor, String mode, int dstY0, int dstY1) {
+        String m = mode == null ? "" : mode.trim();
+        int reach = m.isEmpty() || m.equalsIgnoreCase("nearest") ? 1 : (m.equalsIgnoreCase("bicubic") ? 3 : 2);
+        int first = (int) Math.floor(dstY0 / factor) - reach;
+        int last = (int) Math.floor(dstY1 / factor) + reach + 1;
+        return new int[]{Math.max(0, first), Math.min(srcH, last)};
+    }
 
-        Split s = new Split();
-        s.topBmp = build(p, topH, p.topDown, topPixels);
-        s.bottomBmp = build(p, bottomH, p.topDown, bottomPixels);
-        return s;
+    /** The workers' zoom factor (BmpUtils.factor). */
+    public static double factor(int percent, boolean zoomIn) {
+        if (percent <= 0) throw new IllegalArgumentException("percent must be > 0");
+        double factor = zoomIn ? (1.0 + percent / 100.0) : (1.0 - percent / 100.0);
+        return factor <= 0.05 ? 0.05 : factor;
     }
 
-    public static byte[] mergeVertical(byte[] topBmp, byte[] bottomBmp) {
-        Parsed t = parse(topBmp);
-        Parsed b = parse(bottomBmp);
+    /** The workers' zoomed length (BmpUtils.scaled), with the same IllegalArgumentException past int. */
+    public static int scaled(int len, double factor) {
+        long n = Math.round(len * factor);
+        if (n > Integer.MAX_VALUE) throw new IllegalArgumentException("Zoomed size too large: " + len + " x " + factor);
+        return (int) Math.max(1, n);
+    }
 
-        if (t.width != b.width) throw new IllegalArgumentException("Cannot merge: different widths");
-        if (t.bpp != b.bpp) throw new IllegalArgumentException("Cannot merge: different bpp");
-        if (t.rowStride != b.rowStride) throw new IllegalArgumentException("Cannot merge: different rowStride");
-        if (t.topDown != b.topDown) throw new IllegalArgumentException("Cannot merge: different orientation");
+    /**
+     * Stacks zoomed bands (top to bottom, as returned by {@link #splitBands}) into one image.
+     * The bands are only viewed, not parsed into copies; each one is copied once into the output.
+     */
+    public static byte[] mergeBands(byte[][] bandBmps) {
+        if (bandBmps.length == 0) throw new IllegalArgumentException("Nothing to merge");
+
+        BmpView[] parts = new BmpView[bandBmps.length];
+        BmpView t = parts[0] = BmpView.of(bandBmps[0]);
+        int mergedH = 0;
+        for (int i = 0; i < bandBmps.length; i++) {
+            BmpView b = parts[i] = (i == 0 ? t : BmpView.of(bandBmps[i]));
+            if (t.width != b.width) throw new IllegalArgumentException("Cannot merge: different widths");
+            if (t.bpp != b.bpp) throw new IllegalArgumentException("Cannot merge: different bpp");
+            if (t.rowStride != b.rowStride) throw new IllegalArgumentException("Cannot merge: different rowStride");
+            if (t.topDown != b.topDown) throw new IllegalArgumentException("Cannot merge: different orientation");
+            mergedH += b.absHeight;
+        }
 
-        int mergedH = t.absHeight + b.absHeight;
-        byte[] mergedPixels = new byte[t.rowStride * mergedH];
+        byte[] merged = t.newFile(t.width, mergedH, t.topDown);
 
-        for (int visualY = 0; visualY < mergedH; visualY++) {
-            boolean fromTop = visualY < t.absHeight;
-            Parsed src = fromTop ? t : b;
-            int srcVisualY = fromTop ? visualY : (visualY - t.absHeight);
+        int visualY = 0;
+        for (BmpView src : parts) {
+            int firstFileRow = t.topDown ? visualY : (mergedH - visualY - src.absHeight);
+            src.copyRows(0, src.absHeight, merged, t.dataOffset + firstFileRow * t.rowStride);
+            visualY += src.absHeight;
+        }
+        return merged;
+    }
 
-            int srcRowIndexInFile = src.topDown ? srcVisualY : (src.absHeight - 1 - srcVisualY);
-            int srcBase = srcRowIndexInFile * src.rowStride;
+    /**
+     * Builds the zoomed image of {@code src} from its zoomed bands (top to bottom, as cut by
+     * {@link #splitForZoom}). The output is allocated once, with {@code src}'s header patched for the
+     * zoomed size. Each band's rows are its pixel array in the image's row order, so a band lands
+     * with a single block copy and no header to parse.
+     */
+    public static byte[] assembleBands(BmpView src, ZoomResult[] bands) {
+        if (bands.length == 0) throw new IllegalArgumentException("Nothing to merge");
+
+        int dstW = bands[0].width;
+        int dstH = 0;
+        for (int i = 0; i < bands.length; i++) {
+            ZoomResult r = bands[i];
+            if (r.width != dstW) throw new IllegalStateException("Cannot merge: different widths");
+            if ((long) BmpView.rowStride(r.width, src.bpp) * r.height != r.rows.length) {
+                throw new IllegalStateException("Band " + i + ": " + r.rows.length + " bytes for " + r.width + "x" + r.height);
+            }
+            dstH += r.height;
+        }
 
-            int dstRowIndexInFile = t.topDown ? visualY : (mergedH - 1 - visualY);
-            int dstBase = dstRowIndexInFile * t.rowStride;
+        byte[] merged = src.newFile(dstW, dstH, src.topDown);
+        int rowStride = BmpView.rowStride(dstW, src.bpp);
 
-            System.arraycopy(src.pixels, srcBase, mergedPixels, dstBase, src.rowStride);
+        int visualY = 0;
+        for (ZoomResult r : bands) {
+            int firstFileRow = src.topDown ? visualY : (dstH - visualY - r.height);
+            System.arraycopy(r.rows, 0, merged, src.dataOffset + firstFileRow * rowStride, r.rows.length);
+            visualY += r.height;
         }
+        return merged;
+    }
 
-        return build(t, mergedH, t.topDown, mergedPixels);
+    static int bandStart(int absHeight, int n, int i) {
+        return (int) ((long) absHeight * i / n);
+    }
+
+    private static long getlong(String key, long def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
     }
 }
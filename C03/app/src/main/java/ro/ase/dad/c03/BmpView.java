@@ -0,0 +1,146 @@
+package ro.ase.dad.c03;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-only view of an uncompressed 24/32 bpp BMP held in a {@link ByteBuffer}
+ * (heap array or memory-mapped file). Parsing only reads the header fields;
+ * pixel rows are copied straight from the buffer into the caller's output array.
+ */
+public final class BmpView {
+
+    /** Largest byte[] the JVM reliably allocates. */
+    static final int MAX_ARRAY_BYTES = Integer.MAX_VALUE - 8;
+
+    private final ByteBuffer buf;
+
+    public final int dataOffset;
+    public final int width;
+    public final int height;       // signed
+    public final int absHeight;
+    public final boolean topDown;
+    public final int bpp;
+    public final int rowStride;
+
+    private BmpView(ByteBuffer buf, int dataOffset, int width, int height, int bpp) {
+        this.buf = buf;
+        this.dataOffset = dataOffset;
+        this.width = width;
+        this.height = height;
+        this.absHeight = Math.abs(height);
+        this.topDown = height < 0;
+        this.bpp = bpp;
+        this.rowStride = rowStride(width, bpp);
+    }
+
+    public static BmpView of(byte[] bmpBytes) {
+        if (bmpBytes == null) throw new IllegalArgumentException("Invalid BMP");
+        return of(ByteBuffer.wrap(bmpBytes));
+    }
+
+    public static BmpView of(ByteBuffer source) {
+        ByteBuffer bb = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (bb.limit() < 54) throw new IllegalArgumentException("Invalid BMP");
+        if (bb.get(0) != 'B' || bb.get(1) != 'M') throw new IllegalArgumentException("Not a BMP");
+
+        int dataOffset = bb.getInt(10);
+        int dibSize = bb.getInt(14);
+        if (dibSize < 40) throw new IllegalArgumentException("Unsupported DIB: " + dibSize);
+
+        int width = bb.getInt(18);
+        int height = bb.getInt(22);
+        short planes = bb.getShort(26);
+        short bpp = bb.getShort(28);
+        int compression = bb.getInt(30);
+
+        if (planes != 1) throw new IllegalArgumentException("Invalid planes");
+        if (!(bpp == 24 || bpp == 32)) throw new IllegalArgumentException("Unsupported bpp " + bpp);
+        if (compression != 0) throw new IllegalArgumentException("Unsupported compression " + compression);
+        if (dataOffset < 54 || width <= 0 || height == Integer.MIN_VALUE) throw new IllegalArgumentException("Invalid BMP geometry");
+
+        BmpView v = new BmpView(bb, dataOffset, width, height, bpp);
+        if ((long) dataOffset + v.pixelBytes() > bb.limit()) throw new IllegalArgumentException("Pixel data out of range");
+        return v;
+    }
+
+    /** Bytes per row incl. padding; IllegalArgumentException when one row would not fit an array. */
+    public static int rowStride(int width, int bpp) {
+        long stride = ((width * (long) (bpp / 8) + 3) / 4) * 4;
+        if (width <= 0 || stride > MAX_ARRAY_BYTES) {
+            throw new IllegalArgumentException("Invalid row: " + width + " pixels at " + bpp + " bpp");
+        }
+        return (int) stride;
+    }
+
+    public long pixelBytes() {
+        return (long) rowStride * absHeight;
+    }
+
+    /** Index of the row in the file for a row counted from the top of the image. */
+    public int fileRow(int visualY) {
+        return topDown ? visualY : (absHeight - 1 - visualY);
+    }
+
+    /** Copies {@code rows} consecutive file rows starting at {@code firstFileRow} into {@code dst}. */
+    public void copyRows(int firstFileRow, int rows, byte[] dst, int dstOffset) {
+        buf.get(dataOffset + firstFileRow * rowStride, dst, dstOffset, rows * rowStride);
+    }
+
+    /**
+     * Copies {@code rows} rows starting at {@code visualY} (counted from the top) into {@code dst},
+     * top to bottom, each padded to {@link #rowStride}.
+     */
+    public void copyVisualRows(int visualY, int rows, byte[] dst, int dstOffset) {
+        if (topDown) {
+            copyRows(visualY, rows, dst, dstOffset);
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            buf.get(dataOffset + fileRow(visualY + i) * rowStride, dst, dstOffset + i * rowStride, rowStride);
+        }
+    }
+
+    /**
+     * Writes {@code rows} top-to-bottom rows from {@code src} into this view's buffer starting at
+     * row {@code visualY}. Only for views over a writable buffer, e.g. one made by {@link #newFile}.
+     */
+    public void putVisualRows(int visualY, int rows, byte[] src, int srcOffset) {
+        if (topDown) {
+            buf.put(dataOffset + visualY * rowStride, src, srcOffset, rows * rowStride);
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            buf.put(dataOffset + fileRow(visualY + i) * rowStride, src, srcOffset + i * rowStride, rowStride);
+        }
+    }
+
+    /**
+     * Pixel bytes of a {@link #newFile} of the given geometry; IllegalArgumentException when that
+     * file would not fit an array.
+     */
+    public int newImageSize(int newWidth, int newAbsHeight) {
+        long size = (long) rowStride(newWidth, bpp) * newAbsHeight;
+        if (newAbsHeight <= 0 || dataOffset + size > MAX_ARRAY_BYTES) {
+            throw new IllegalArgumentException("Image too large: " + newWidth + "x" + newAbsHeight);
+        }
+        return (int) size;
+    }
+
+    /**
+     * Allocates a BMP file of the given geometry with this image's header (patched for the new size)
+     * already written. The pixel area, starting at {@link #dataOffset}, is left zeroed for the caller.
+     */
+    public byte[] newFile(int newWidth, int newAbsHeight, boolean newTopDown) {
+        int newImageSize = newImageSize(newWidth, newAbsHeight);
+        byte[] out = new byte[dataOffset + newImageSize];
+        buf.get(0, out, 0, dataOffset);
+
+        ByteBuffer hb = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+        hb.putInt(2, out.length);
+        hb.putInt(18, newWidth);
+        hb.putInt(22, newTopDown ? -newAbsHeight : newAbsHeight);
+        hb.putInt(34, newImageSize);
+        return out;
+    }
+}
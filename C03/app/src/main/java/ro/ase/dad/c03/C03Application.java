@@ -0,0 +1,9 @@
+package ro.ase.dad.c03;
+
+import jakarta.ws.rs.ApplicationPath;
+import jakarta.ws.rs.core.Application;
+
+/** REST endpoints of the c03 war, under /c03/api. */
+@ApplicationPath("/api")
+public class C03Application extends Application {
+}
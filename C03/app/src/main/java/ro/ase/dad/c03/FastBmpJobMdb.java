@@ -0,0 +1,40 @@
+package ro.ase.dad.c03;
+
+import jakarta.ejb.ActivationConfigProperty;
+import jakarta.ejb.EJB;
+import jakarta.ejb.MessageDriven;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.jms.Message;
+import jakarta.jms.MessageListener;
+
+/*
+ * Fast lane: small jobs that c01 estimated as cheap (JOB_FAST_MAX_COST), from c03's queue of the
+ * bmp.fast.topic virtual topic. Its sessions are reserved: however many large jobs BmpJobMdb is
+ * running, these keep taking small ones. start.sh sets maxSessions from MDB_FAST_SESSIONS
+ * through FastBmpJobMdb.activation.*; the rest mirrors BmpJobMdb.
+ */
+@MessageDriven(activationConfig = {
+        @ActivationConfigProperty(propertyName = "destinationType", propertyValue = "jakarta.jms.Queue"),
+        @ActivationConfigProperty(propertyName = "destination", propertyValue = "Consumer.c03.bmp.fast.topic"),
+
+        @ActivationConfigProperty(propertyName = "maxSessions", propertyValue = "2"),
+        @ActivationConfigProperty(propertyName = "maxMessagesPerSessions", propertyValue = "1"),
+        @ActivationConfigProperty(propertyName = "useRAManagedTransaction", propertyValue = "true"),
+        @ActivationConfigProperty(propertyName = "maximumRedeliveries", propertyValue = "3"),
+        @ActivationConfigProperty(propertyName = "initialRedeliveryDelay", propertyValue = "2000"),
+        @ActivationConfigProperty(propertyName = "redeliveryUseExponentialBackOff", propertyValue = "true"),
+
+        @ActivationConfigProperty(propertyName = "connectionFactoryLookup", propertyValue = "jms/InboundConnectionFactory")
+})
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class FastBmpJobMdb implements MessageListener {
+
+    @EJB
+    private JobDonePublisher donePublisher;
+
+    @Override
+    public void onMessage(Message message) {
+        JobProcessor.FAST.process(message, donePublisher);
+    }
+}
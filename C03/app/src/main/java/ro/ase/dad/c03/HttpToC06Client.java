@@ -1,69 +1,164 @@
 package ro.ase.dad.c03;
 
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import jakarta.json.Json;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Stores results in c06 over one shared {@link HttpClient}, so connections to c06 stay open and
+ * are reused across jobs (keep-alive time is set in start.sh with jdk.httpclient.keepalive.timeout).
+ *
+ * The request body is streamed from the result buffer or from a file, without another copy.
+ * Stores are asynchronous: the returned future completes with the new image id, parsed from the
+ * JSON response. Latency, bytes and in-flight counts are kept in {@link #stats()}.
+ */
 public class HttpToC06Client {
 
     private static final String C06_BASE = getenv("C06_BASE_URL", "http://c06:3000");
+    private static final int CONNECT_TIMEOUT_MS = getint("C06_CONNECT_TIMEOUT_MS", 5000);
+    private static final int TIMEOUT_MS = getint("C06_TIMEOUT_MS", 30000);
+    private static final int THREADS = getint("C06_HTTP_THREADS", 4);
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        private final AtomicInteger n = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "c03-c06-http-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    // shared by every MDB instance; HttpClient pools connections per host
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+            .executor(EXECUTOR)
+            .build();
+
+    private static final AtomicLong BYTES = new AtomicLong();
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final Metrics.Histogram STORE_STAGE = Metrics.stage("c06_store");
+
+    static {
+        Metrics.gauge("c06_stores_in_flight", IN_FLIGHT::get);
+        Metrics.gauge("c06_stored_bytes", BYTES::get);
+    }
 
     public long storeImage(byte[] bmp, String filename, boolean zoomIn, int percent) throws Exception {
-        String urlStr = C06_BASE + "/images"
+        try {
+            return storeImageAsync(bmp, filename, zoomIn, percent).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Long> storeImageAsync(byte[] bmp, String filename, boolean zoomIn, int percent) {
+        return send(HttpRequest.BodyPublishers.ofByteArray(bmp), bmp.length, filename, zoomIn, percent);
+    }
+
+    /** Streams the result from a file, e.g. one spooled to disk, instead of a heap buffer. */
+    public CompletableFuture<Long> storeImageAsync(Path bmp, String filename, boolean zoomIn, int percent) {
+        try {
+            return send(HttpRequest.BodyPublishers.ofFile(bmp), Files.size(bmp), filename, zoomIn, percent);
+        } catch (Exception e) {
+            STORE_STAGE.recordError();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Long> send(HttpRequest.BodyPublisher body, long length,
+                                         String filename, boolean zoomIn, int percent) {
+        URI uri = URI.create(C06_BASE + "/images"
                 + "?filename=" + enc(filename == null ? "result.bmp" : filename)
                 + "&mime=" + enc("image/bmp")
                 + "&zoomIn=" + zoomIn
-                + "&percent=" + percent;
+                + "&percent=" + percent);
 
-        HttpURLConnection con = null;
-        try {
-            URL url = new URL(urlStr);
-            con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("POST");
-            con.setDoOutput(true);
-            con.setConnectTimeout(5000);
-            con.setReadTimeout(30000);
-            con.setRequestProperty("Content-Type", "application/octet-stream");
-            con.setRequestProperty("Content-Length", String.valueOf(bmp.length));
-
-            try (OutputStream os = con.getOutputStream()) {
-                os.write(bmp);
-            }
-
-            int code = con.getResponseCode();
-            if (code < 200 || code >= 300) {
-                throw new RuntimeException("C06 storeImage HTTP " + code);
-            }
-
-            try (InputStream is = con.getInputStream()) {
-                String json = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-                return extractId(json);
-            }
-        } finally {
-            if (con != null) {
-                con.disconnect();
-            }
-        }
+        HttpRequest req = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(TIMEOUT_MS))
+                .header("Content-Type", "application/octet-stream")
+                .POST(body)
+                .build();
+
+        long t0 = System.nanoTime();
+        IN_FLIGHT.incrementAndGet();
+        return HTTP.sendAsync(req, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(resp -> {
+                    int code = resp.statusCode();
+                    if (code < 200 || code >= 300) {
+                        throw new RuntimeException("C06 storeImage HTTP " + code);
+                    }
+                    return extractId(resp.body());
+                })
+                .whenComplete((id, err) -> {
+                    IN_FLIGHT.decrementAndGet();
+                    if (err != null) {
+                        STORE_STAGE.recordError();
+                    } else {
+                        STORE_STAGE.since(t0);
+                        BYTES.addAndGet(length);
+                    }
+                });
+    }
+
+    /** Store latency (the c06_store stage of {@link Metrics}) and volume since startup. */
+    public static Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>(STORE_STAGE.summary());
+        m.put("bytes", BYTES.get());
+        m.put("inFlight", IN_FLIGHT.get());
+        return m;
     }
 
     private static String enc(String s) {
         return URLEncoder.encode(s, StandardCharsets.UTF_8);
     }
 
-    private static long extractId(String json) {
-        int i = json.indexOf("\"id\"");
-        if (i < 0) throw new RuntimeException("No id in response: " + json);
-        int c = json.indexOf(":", i);
-        int end = json.indexOf(",", c);
-        if (end < 0) end = json.indexOf("}", c);
-        return Long.parseLong(json.substring(c + 1, end).trim());
+    private static long extractId(byte[] body) {
+        try (JsonReader r = Json.createReader(new ByteArrayInputStream(body))) {
+            JsonObject json = r.readObject();
+            JsonNumber id = json.getJsonNumber("id");
+            if (id == null) throw new RuntimeException("No id in response: " + json);
+            return id.longValueExact();
+        }
     }
 
     private static String getenv(String k, String def) {
         String v = System.getenv(k);
         return (v == null || v.isBlank()) ? def : v;
     }
+
+    private static int getint(String k, int def) {
+        String v = System.getenv(k);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
 }
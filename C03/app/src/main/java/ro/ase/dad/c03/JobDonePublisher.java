@@ -13,6 +13,8 @@ import javax.naming.InitialContext;
 @Stateless
 public class JobDonePublisher {
 
+    private static final Metrics.Histogram DONE_STAGE = Metrics.stage("done_publish");
+
     private volatile ConnectionFactory cachedCf;
     private volatile Queue cachedQueue;
 
@@ -45,17 +47,46 @@ public class JobDonePublisher {
     }
 
     public void publishJobDone(String jobId, long imageId) {
+        publishJobDone(jobId, imageId, null);
+    }
+
+    /** Also sends c03's part of the job timeline (the "timeline" property) when {@code trace} is set. */
+    public void publishJobDone(String jobId, long imageId, JobTrace trace) {
+        publish(jobId, imageId, null, trace);
+    }
+
+    /** Tells c01 a job will not finish (e.g. its result could not be stored), so it turns FAILED. */
+    public void publishJobFailed(String jobId, String error) {
+        publishJobFailed(jobId, error, null);
+    }
+
+    public void publishJobFailed(String jobId, String error, JobTrace trace) {
+        publish(jobId, -1, error == null ? "failed" : error, trace);
+    }
+
+    private void publish(String jobId, long imageId, String error, JobTrace trace) {
         ConnectionFactory cf = lookupOutboundCF();
         Queue q = lookupJobDoneQueue();
 
+        long t0 = System.nanoTime();
         try (JMSContext ctx = cf.createContext(Session.AUTO_ACKNOWLEDGE)) {
             JMSProducer producer = ctx.createProducer();
             Message msg = ctx.createMessage();
             msg.setStringProperty("jobId", jobId);
-            msg.setLongProperty("imageId", imageId);
+            if (error != null) {
+                msg.setStringProperty("error", error);
+            } else {
+                msg.setLongProperty("imageId", imageId);
+            }
+            if (trace != null) {
+                trace.mark("doneSent");
+                msg.setStringProperty("timeline", trace.toJson());
+            }
             producer.send(q, msg);
+            DONE_STAGE.since(t0);
         } catch (Exception e) {
-            System.err.println("C03: Failed to publish job done: " + e.getMessage());
+            DONE_STAGE.recordError();
+            System.err.println("C03: Failed to publish job " + (error != null ? "failure" : "done") + ": " + e.getMessage());
             e.printStackTrace();
         }
     }
@@ -0,0 +1,275 @@
+package ro.ase.dad.c03;
+
+import jakarta.jms.JMSException;
+import jakarta.jms.Message;
+
+import ro.ase.dad.rmi.BandRequest;
+import ro.ase.dad.rmi.PayloadCodec;
+import ro.ase.dad.rmi.ZoomResult;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The work behind both job MDBs: read the job (inline or claim-check), zoom it on the RMI
+ * workers, store the result in c06 and report it to c01.
+ *
+ * There is one processor per lane. The fast lane ({@link FastBmpJobMdb}) has its own band
+ * executor and its own c06 store permits, so small interactive jobs never wait for capacity
+ * that large batch jobs ({@link BmpJobMdb}) are holding. Workers, blobs and the result cache
+ * are shared.
+ */
+public final class JobProcessor {
+
+    // Bands go to the workers of the WorkerRegistry: RMI_WORKERS plus those that announce themselves.
+    private static final WorkerRegistry WORKERS = WorkerRegistry.get();
+
+    // Nearest-neighbour jobs stream their rows through worker sessions instead of band files.
+    private static final boolean RMI_STREAMING = Boolean.parseBoolean(getenv("RMI_STREAMING", "false"));
+
+    // Claim-check blobs written by c01 on the shared volume; sha256 is checked unless BLOB_VERIFY=false.
+    private static final String BLOB_DIR = getenv("BLOB_DIR", "");
+    private static final BlobReader BLOBS = BLOB_DIR.isBlank() ? null
+            : new BlobReader(Path.of(BLOB_DIR), Boolean.parseBoolean(getenv("BLOB_VERIFY", "true")));
+
+    // Repeated jobs (same input bytes and parameters) reuse the stored image; RESULT_CACHE=false disables.
+    private static final ResultCache RESULTS = !Boolean.parseBoolean(getenv("RESULT_CACHE", "true")) ? null
+            : new ResultCache(getint("RESULT_CACHE_BYTES", 16 * 1024 * 1024),
+                    getenv("RESULT_CACHE_DIR", "").isBlank() ? null : Path.of(getenv("RESULT_CACHE_DIR", "")),
+                    getint("RESULT_CACHE_DISK_TTL_MS", 7 * 24 * 3600 * 1000));
+
+    // Results are stored in c06 asynchronously; at most C06_MAX_INFLIGHT stores per lane at once.
+    // With C06_STORE_ASYNC=false every job waits for its store, so a store failure is redelivered.
+    // Async jobs are acked before their store ends; if this node dies meanwhile, c01 fails the job
+    // after its JOB_TIMEOUT_MS.
+    private static final boolean C06_STORE_ASYNC = Boolean.parseBoolean(getenv("C06_STORE_ASYNC", "true"));
+
+    // c03_stage_seconds{stage=...}: the rest (rmi_band, c06_store, done_publish) is timed where it runs
+    private static final Metrics.Histogram BODY_STAGE = Metrics.stage("body_read");
+    private static final Metrics.Histogram SPLIT_STAGE = Metrics.stage("split");
+    private static final Metrics.Histogram MERGE_STAGE = Metrics.stage("merge");
+
+    public static final JobProcessor BATCH = new JobProcessor("batch", false, getint("C06_MAX_INFLIGHT", 8));
+    public static final JobProcessor FAST = new JobProcessor("fast", true, getint("C06_FAST_MAX_INFLIGHT", 4));
+
+    private final String lane;
+    private final boolean fastLane;
+    private final Metrics.Histogram jobStage;
+    private final Semaphore storePermits;
+    private final HttpToC06Client c06 = new HttpToC06Client();
+    private final RmiZoomClient rmi = new RmiZoomClient();
+    private final BandScatterGather scatter;
+    private final BandStreamer streamer;
+
+    private JobProcessor(String lane, boolean fastLane, int maxStores) {
+        this.lane = lane;
+        this.fastLane = fastLane;
+        this.jobStage = Metrics.stage("job", "lane", lane);
+        this.storePermits = new Semaphore(Math.max(1, maxStores));
+        this.scatter = new BandScatterGather(rmi, fastLane);
+        this.streamer = new BandStreamer(rmi, scatter);
+    }
+
+    /**
+     * Runs one job message. Throws for failures that a redelivery may fix, so the MDB's
+     * delivery rolls back; bad input is dropped and reported to c01 as a failed job.
+     */
+    public void process(Message message, JobDonePublisher donePublisher) {
+        System.out.println("C03: " + lane + " lane job, class=" + message.getClass());
+        long received = System.nanoTime();
+        String jobId = stringProperty(message, "jobId");
+        // c01's trace context: when the job was handed to the broker
+        JobTrace trace = new JobTrace(traceEnqueued(message));
+        try {
+            boolean zoomIn = message.getBooleanProperty("zoomIn");
+            int percent = message.getIntProperty("percent");
+            String filename = message.getStringProperty("filename");
+            String mode = message.getStringProperty("mode"); // null => nearest
+            boolean redelivered = message.getJMSRedelivered();
+
+            String encoding = message.getStringProperty("encoding"); // null => raw BMP body
+            String blobKey = message.getStringProperty("blobKey");   // set => claim-check, empty body
+
+            ByteBuffer bmp;
+            String via;
+            long t0 = System.nanoTime();
+            if (blobKey != null) {
+                bmp = blobs().map(blobKey, message.getLongProperty("blobSize"), message.getStringProperty("blobSha256"));
+                via = " (blob " + blobKey + ")";
+            } else {
+                byte[] body = message.getBody(byte[].class);
+                byte[] raw = PayloadCodec.decode(encoding, body);
+                bmp = ByteBuffer.wrap(raw);
+                via = body != raw ? " (" + encoding + " " + body.length + ")" : "";
+            }
+            BODY_STAGE.since(t0);
+            trace.mark("read");
+
+            System.out.println("C03: Received jobId=" + jobId + " bytes=" + bmp.remaining() + via +
+                    " zoomIn=" + zoomIn + " percent=" + percent + " mode=" + mode +
+                    (redelivered ? " (redelivered)" : ""));
+
+            System.out.println("C03: header=" + hex(bmp, 16));
+
+            if (bmp.remaining() < 2 || bmp.get(0) != 'B' || bmp.get(1) != 'M') {
+                throw new IllegalArgumentException("Not a BMP");
+            }
+
+            BmpView view = BmpView.of(bmp);
+
+            // waits here while this lane's max stores are still running: backpressure from c06
+            storePermits.acquire();
+            CompletableFuture<Long> stored;
+            try {
+                if (RESULTS != null) {
+                    // claim-check keys already are the content sha256 (verified by BlobReader)
+                    String inputSha = blobKey != null ? blobKey : ResultCache.sha256(bmp);
+                    String cacheKey = ResultCache.key(inputSha, percent, zoomIn, mode);
+                    stored = RESULTS.get(cacheKey, () -> zoomAndStore(jobId, trace, view, percent, zoomIn, mode, filename));
+                } else {
+                    stored = zoomAndStore(jobId, trace, view, percent, zoomIn, mode, filename);
+                }
+            } catch (Exception e) {
+                storePermits.release();
+                throw e;
+            }
+            stored.whenComplete((imageId, err) -> storePermits.release());
+
+            if (!C06_STORE_ASYNC || stored.isCompletedExceptionally()) {
+                // zoom failures (and every failure when C06_STORE_ASYNC=false) roll back for redelivery
+                long imageId = join(stored);
+                donePublisher.publishJobDone(jobId, imageId, trace);
+                finished(received, "done");
+                System.out.println("C03: Done jobId=" + jobId + " imageId=" + imageId);
+                return;
+            }
+
+            // the session takes the next job while c06 stores this result
+            stored.whenComplete((imageId, err) -> {
+                if (err != null) {
+                    Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                    System.out.println("C03: store failed jobId=" + jobId + ": " + cause.getMessage());
+                    donePublisher.publishJobFailed(jobId, "Store failed: " + cause.getMessage(), trace);
+                    finished(received, "failed");
+                } else {
+                    donePublisher.publishJobDone(jobId, imageId, trace);
+                    finished(received, "done");
+                    System.out.println("C03: Done jobId=" + jobId + " imageId=" + imageId);
+                }
+            });
+
+        } catch (IllegalArgumentException e) {
+            // bad input: redelivering the same bytes cannot help, so c01 hears about it right away
+            System.out.println("C03 MDB rejected job " + jobId + ": " + e.getMessage());
+            if (jobId != null) donePublisher.publishJobFailed(jobId, "Rejected: " + e.getMessage(), trace);
+            finished(received, "rejected");
+        } catch (Exception e) {
+            Metrics.count("jobs", "lane", lane, "result", "retry");
+            System.out.println("C03 MDB error: " + e.getMessage());
+            e.printStackTrace();
+            // rolls the delivery back so the broker redelivers it (to this node or another one)
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompletableFuture<Long> zoomAndStore(String jobId, JobTrace trace, BmpView view, int percent,
+                                                 boolean zoomIn, String mode, String filename) throws Exception {
+        trace.mark("computeStart");
+        int bandCount = BmpSplitMerge.chooseBandCount(view, WORKERS.active().size());
+        List<WorkerRegistry.Worker> assigned = WORKERS.assign(bandCount, fastLane);
+        boolean streaming = RMI_STREAMING && (mode == null || mode.isBlank() || mode.equalsIgnoreCase("nearest"));
+        System.out.println("C03: jobId=" + jobId + " bands=" + bandCount + " workers=" + WORKERS.active().size()
+                + (streaming ? " streaming" : ""));
+
+        byte[] merged;
+        if (streaming) {
+            merged = streamer.zoom(view, assigned, percent, zoomIn);
+        } else {
+            long t0 = System.nanoTime();
+            BandRequest[] split = BmpSplitMerge.splitForZoom(view, bandCount, percent, zoomIn, mode, jobId);
+            SPLIT_STAGE.since(t0);
+
+            List<BandScatterGather.Band> bands = new ArrayList<>(split.length);
+            for (int i = 0; i < split.length; i++) {
+                bands.add(new BandScatterGather.Band(assigned.get(i), split[i], trace));
+            }
+
+            ZoomResult[] out = scatter.zoomAll(bands);
+            t0 = System.nanoTime();
+            merged = BmpSplitMerge.assembleBands(view, out);
+            MERGE_STAGE.since(t0);
+        }
+
+        trace.mark("computeEnd");
+
+        trace.mark("storeStart");
+        return c06.storeImageAsync(merged, filename, zoomIn, percent)
+                .whenComplete((imageId, err) -> trace.mark("stored"));
+    }
+
+    /** Job latency from delivery to the done (or failed) notification, and the job count. */
+    private void finished(long receivedNanos, String result) {
+        jobStage.since(receivedNanos);
+        Metrics.count("jobs", "lane", lane, "result", result);
+    }
+
+    private static long join(CompletableFuture<Long> f) throws Exception {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    /** The property, or null if the message has none or it cannot be read. */
+    private static String stringProperty(Message message, String name) {
+        try {
+            return message.getStringProperty(name);
+        } catch (JMSException e) {
+            return null;
+        }
+    }
+
+    private static long traceEnqueued(Message message) {
+        try {
+            return message.propertyExists("traceEnqueued") ? message.getLongProperty("traceEnqueued") : 0;
+        } catch (JMSException e) {
+            return 0;
+        }
+    }
+
+    private static BlobReader blobs() {
+        if (BLOBS == null) throw new IllegalStateException("Claim-check message but BLOB_DIR is not set");
+        return BLOBS;
+    }
+
+    private static String hex(ByteBuffer b, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Math.min(n, b.remaining()); i++) {
+            sb.append(String.format("%02X ", b.get(i)));
+        }
+        return sb.toString().trim();
+    }
+
+    private static String getenv(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
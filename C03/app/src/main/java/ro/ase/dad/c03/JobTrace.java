@@ -0,0 +1,61 @@
+package ro.ase.dad.c03;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * c03's part of a job's timeline, sent back to c01 as the "timeline" property of the done
+ * message and served there by GET /api/jobs/{jobId}/timeline.
+ *
+ * Events are epoch milliseconds on this node's clock: dequeued, read, computeStart, computeEnd,
+ * storeStart, stored and doneSent (computeStart is missing when the result cache answered), plus
+ * jmsSent, c01's send time from the job message's "traceEnqueued" property, which also gives the
+ * broker queueing time here ({@code c03_stage_seconds{stage="broker_queue"}}). Each band adds the
+ * worker, when c03 sent it and got it back, and when the worker started and finished it on its own
+ * clock.
+ */
+public final class JobTrace {
+
+    private static final Metrics.Histogram QUEUE_STAGE = Metrics.stage("broker_queue");
+
+    private final Map<String, Long> events = new LinkedHashMap<>(); // guarded by this
+    private final List<JsonObject> bands = new ArrayList<>();         // guarded by this
+
+    /** Starts the trace of a job just taken from the queue; enqueuedAt is 0 when c01 did not send it. */
+    public JobTrace(long enqueuedAt) {
+        long now = System.currentTimeMillis();
+        if (enqueuedAt > 0) events.put("jmsSent", enqueuedAt);
+        events.put("dequeued", now);
+        if (enqueuedAt > 0 && now >= enqueuedAt) QUEUE_STAGE.record((now - enqueuedAt) * 1_000_000L);
+    }
+
+    public synchronized void mark(String event) {
+        events.put(event, System.currentTimeMillis());
+    }
+
+    /** One band call; workerStart/workerEnd are 0 when the call failed. */
+    public synchronized void band(String worker, long sent, long workerStart, long workerEnd, long returned, boolean ok) {
+        JsonObjectBuilder b = Json.createObjectBuilder()
+                .add("worker", worker)
+                .add("sent", sent)
+                .add("returned", returned)
+                .add("ok", ok);
+        if (workerStart > 0) b.add("workerStart", workerStart).add("workerEnd", workerEnd);
+        bands.add(b.build());
+    }
+
+    public synchronized String toJson() {
+        JsonObjectBuilder o = Json.createObjectBuilder();
+        events.forEach(o::add);
+        JsonArrayBuilder list = Json.createArrayBuilder();
+        bands.forEach(list::add);
+        return o.add("bands", list).build().toString();
+    }
+}
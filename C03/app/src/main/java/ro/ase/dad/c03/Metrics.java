@@ -0,0 +1,240 @@
+package ro.ase.dad.c03;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-stage latency histograms, counters and gauges of this service, in the Prometheus text
+ * format at GET /c03/api/metrics ({@link MetricsResource}).
+ *
+ * Latencies go into log-linear buckets, as in HdrHistogram: every power of two of microseconds is
+ * split into 8 sub-buckets, so a percentile read from them is within 12.5% of the true value, from
+ * 1 µs up to hours. Recording is an index computation and a few atomic adds, without locks or
+ * allocation, so it is cheap enough for every band call. The export has Prometheus buckets at the
+ * powers of two ({@code c03_stage_seconds}) and p50/p95/p99 since start from the fine buckets
+ * ({@code c03_stage_quantile_seconds}). The JSON stats endpoints read the same histograms
+ * ({@link Histogram#summary()}); this is the only place latency percentiles are computed.
+ */
+public final class Metrics {
+
+    private static final String PREFIX = "c03_";
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    // keyed by the rendered label set, so each series has one entry; sorted for a stable export
+    private static final Map<String, Histogram> STAGES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Map<String, LongAdder>> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /** The histogram of one stage; {@code labels} are extra name/value pairs, e.g. "worker", "c04:1099". */
+    public static Histogram stage(String stage, String... labels) {
+        String key = labels("stage", stage, labels);
+        Histogram h = STAGES.get(key);
+        return h != null ? h : STAGES.computeIfAbsent(key, k -> new Histogram());
+    }
+
+    /** Adds one to the counter {@code c03_<name>_total} with the given label pairs. */
+    public static void count(String name, String... labels) {
+        COUNTERS.computeIfAbsent(name, k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(labels(null, null, labels), k -> new LongAdder())
+                .increment();
+    }
+
+    /** A value read at export time, as {@code c03_<name>}. */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+
+        sb.append("# HELP ").append(PREFIX).append("stage_seconds Latency of each processing stage.\n");
+        sb.append("# TYPE ").append(PREFIX).append("stage_seconds histogram\n");
+        for (Map.Entry<String, Histogram> e : STAGES.entrySet()) e.getValue().buckets(sb, e.getKey());
+
+        sb.append("# HELP ").append(PREFIX).append("stage_quantile_seconds Stage latency percentiles since start.\n");
+        sb.append("# TYPE ").append(PREFIX).append("stage_quantile_seconds gauge\n");
+        for (Map.Entry<String, Histogram> e : STAGES.entrySet()) e.getValue().quantiles(sb, e.getKey());
+
+        sb.append("# HELP ").append(PREFIX).append("stage_errors_total Failed executions of each stage.\n");
+        sb.append("# TYPE ").append(PREFIX).append("stage_errors_total counter\n");
+        for (Map.Entry<String, Histogram> e : STAGES.entrySet()) {
+            series(sb, "stage_errors_total", e.getKey(), null).append(e.getValue().errors.sum()).append('\n');
+        }
+
+        for (Map.Entry<String, Map<String, LongAdder>> c : COUNTERS.entrySet()) {
+            sb.append("# TYPE ").append(PREFIX).append(c.getKey()).append("_total counter\n");
+            for (Map.Entry<String, LongAdder> e : c.getValue().entrySet()) {
+                series(sb, c.getKey() + "_total", e.getKey(), null).append(e.getValue().sum()).append('\n');
+            }
+        }
+        for (Map.Entry<String, LongSupplier> g : GAUGES.entrySet()) {
+            sb.append("# TYPE ").append(PREFIX).append(g.getKey()).append(" gauge\n");
+            series(sb, g.getKey(), "", null).append(g.getValue().getAsLong()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A latency histogram; {@link #stage} keeps the exported ones. One created directly is not
+     * exported, for values that are only read in process.
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB = 1 << SUB_BITS;
+        private static final int MAX_EXP = 40; // 2^40 µs, ~12 days: everything above shares the last bucket
+
+        // index i < SUB holds [i, i+1) µs; above that, SUB buckets per power of two
+        private final AtomicLongArray counts = new AtomicLongArray((MAX_EXP - SUB_BITS + 1) * SUB + SUB);
+        private final LongAdder sumNanos = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        public void record(long nanos) {
+            counts.incrementAndGet(index(Math.max(0, nanos) / 1000));
+            sumNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        /** Counts a failed stage; its duration is not recorded. */
+        public void recordError() {
+            errors.increment();
+        }
+
+        /** Records the time since {@code startNanos} (a System.nanoTime() value). */
+        public void since(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        /** Recorded (successful) executions. */
+        public long count() {
+            long total = 0;
+            for (int i = 0; i < counts.length(); i++) total += counts.get(i);
+            return total;
+        }
+
+        /**
+         * The q-quantile (0..1) in nanoseconds, as the upper bound of its bucket (within 12.5%) but
+         * never above the largest value recorded, or 0 while nothing is recorded.
+         */
+        public long quantileNanos(double q) {
+            long[] c = new long[counts.length()];
+            long total = 0;
+            for (int i = 0; i < c.length; i++) total += (c[i] = counts.get(i));
+            return quantileNanos(c, total, q);
+        }
+
+        /** Count, errors, mean, p50/p95/p99 and max in milliseconds, for the JSON stats endpoints. */
+        public Map<String, Object> summary() {
+            long[] c = new long[counts.length()];
+            long total = 0;
+            for (int i = 0; i < c.length; i++) total += (c[i] = counts.get(i));
+
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", total);
+            m.put("errors", errors.sum());
+            m.put("meanMs", total == 0 ? 0.0 : millis(sumNanos.sum() / total));
+            m.put("p50Ms", millis(quantileNanos(c, total, 0.50)));
+            m.put("p95Ms", millis(quantileNanos(c, total, 0.95)));
+            m.put("p99Ms", millis(quantileNanos(c, total, 0.99)));
+            m.put("maxMs", millis(maxNanos.get()));
+            return m;
+        }
+
+        private long quantileNanos(long[] c, long total, double q) {
+            long micros = quantileMicros(c, total, q);
+            return micros < 0 ? 0 : Math.min(micros * 1000, maxNanos.get());
+        }
+
+        /** Upper bound in µs of the bucket holding the q-quantile of {@code c}, or -1 when it is empty. */
+        private static long quantileMicros(long[] c, long total, double q) {
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < c.length && total > 0; i++) {
+                seen += c[i];
+                if (seen >= rank) return upperMicros(i);
+            }
+            return -1;
+        }
+
+        private static double millis(long nanos) {
+            return Math.round(nanos / 1_000.0) / 1_000.0;
+        }
+
+        private int index(long micros) {
+            if (micros < SUB) return (int) micros;
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            if (exp > MAX_EXP) return counts.length() - 1;
+            int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB - 1);
+            return (exp - SUB_BITS + 1) * SUB + sub;
+        }
+
+        /** Exclusive upper bound of bucket {@code i}, in microseconds. */
+        private static long upperMicros(int i) {
+            if (i < SUB) return i + 1;
+            int exp = i / SUB + SUB_BITS - 1;
+            return (long) (SUB + i % SUB + 1) << (exp - SUB_BITS);
+        }
+
+        private void buckets(StringBuilder sb, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                cumulative += counts.get(i);
+                // Prometheus buckets at each power of two; the last bucket is open-ended
+                if (i % SUB == SUB - 1 && i < counts.length() - 1) {
+                    series(sb, "stage_seconds_bucket", labels, seconds(upperMicros(i))).append(cumulative).append('\n');
+                }
+            }
+            series(sb, "stage_seconds_bucket", labels, "+Inf").append(cumulative).append('\n');
+            series(sb, "stage_seconds_sum", labels, null).append(sumNanos.sum() / 1e9).append('\n');
+            series(sb, "stage_seconds_count", labels, null).append(cumulative).append('\n');
+        }
+
+        private void quantiles(StringBuilder sb, String labels) {
+            long[] c = new long[counts.length()];
+            long total = 0;
+            for (int i = 0; i < c.length; i++) total += (c[i] = counts.get(i));
+            for (double q : QUANTILES) {
+                long micros = quantileMicros(c, total, q);
+                String value = micros < 0 ? "NaN" : seconds(micros);
+                String l = labels + ",quantile=\"" + q + "\"";
+                series(sb, "stage_quantile_seconds", l, null).append(value).append('\n');
+            }
+        }
+
+        private static String seconds(long micros) {
+            return BigDecimal.valueOf(micros).movePointLeft(6).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    private static StringBuilder series(StringBuilder sb, String name, String labels, String le) {
+        sb.append(PREFIX).append(name);
+        if (!labels.isEmpty() || le != null) {
+            sb.append('{').append(labels);
+            if (le != null) sb.append(labels.isEmpty() ? "" : ",").append("le=\"").append(le).append('"');
+            sb.append('}');
+        }
+        return sb.append(' ');
+    }
+
+    private static String labels(String firstKey, String firstValue, String[] pairs) {
+        StringBuilder sb = new StringBuilder();
+        if (firstKey != null) label(sb, firstKey, firstValue);
+        for (int i = 0; i + 1 < pairs.length; i += 2) label(sb, pairs[i], pairs[i + 1]);
+        return sb.toString();
+    }
+
+    private static void label(StringBuilder sb, String key, String value) {
+        if (sb.length() > 0) sb.append(',');
+        String v = String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        sb.append(key).append("=\"").append(v).append('"');
+    }
+}
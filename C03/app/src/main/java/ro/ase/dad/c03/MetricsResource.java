@@ -0,0 +1,16 @@
+package ro.ase.dad.c03;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/** Prometheus scrape target: GET /c03/api/metrics. */
+@Path("/metrics")
+public class MetricsResource {
+
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public String metrics() {
+        return Metrics.scrape();
+    }
+}
@@ -0,0 +1,226 @@
+package ro.ase.dad.c03;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Maps a job (sha256 of the input BMP + zoom parameters) to the c06 image id of its result,
+ * so resubmitting the same image with the same settings publishes the stored image right away.
+ *
+ * Tiers: an in-memory LRU bounded by an estimate of its heap bytes, then optionally one small
+ * file per key under a directory, which can be shared by all c03 nodes. Disk hits are promoted to
+ * memory, and disk entries older than the disk TTL are swept. Identical jobs that arrive while one
+ * is running wait for it instead of computing again (single-flight, per node). A waiter shares the
+ * running job's store only once its zoom has succeeded; if the zoom fails, the waiter computes
+ * itself, so a transient failure of one job is not passed on to the others.
+ */
+public class ResultCache {
+
+    // key string (64 hex + params) + boxed Long + LinkedHashMap entry
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final Path dir;         // null => memory only
+    private final long diskTtlMs;
+
+    private final LinkedHashMap<String, Long> lru = new LinkedHashMap<>(256, 0.75f, true); // guarded by this
+    private long bytes;                                                                      // guarded by this
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    /** A running computation: computed completes once the zoom is done and its store has started. */
+    private static final class Flight {
+        final CompletableFuture<Void> computed = new CompletableFuture<>();
+        final CompletableFuture<Long> stored = new CompletableFuture<>();
+    }
+
+    public ResultCache(long maxBytes, Path dir, long diskTtlMs) {
+        this.maxBytes = maxBytes;
+        this.dir = dir;
+        this.diskTtlMs = diskTtlMs;
+        if (dir != null && diskTtlMs > 0) startSweeper();
+    }
+
+    /** Cache key for an input (by content hash) and the parameters that change the result. */
+    public static String key(String inputSha256, int percent, boolean zoomIn, String mode) {
+        String m = (mode == null || mode.isBlank()) ? "nearest" : mode.trim().toLowerCase().replaceAll("[^a-z0-9]", "_");
+        return inputSha256 + "-" + (zoomIn ? "in" : "out") + percent + "-" + m;
+    }
+
+    public static String sha256(ByteBuffer data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data.duplicate());
+            return HexFormat.of().formatHex(md.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached image id for {@code key}, or the result of {@code compute}, which zooms
+     * synchronously and returns the store, which may finish asynchronously. Concurrent calls with
+     * the same key share one computation: they block until its zoom is done and then share its
+     * store, whose failure fails all of them. If the zoom throws, its caller gets the exception and
+     * each waiter runs {@code compute} itself. Nothing is cached unless the store succeeds.
+     */
+    public CompletableFuture<Long> get(String key, Callable<CompletableFuture<Long>> compute) throws Exception {
+        while (true) {
+            Long hit = lookup(key);
+            if (hit != null) return CompletableFuture.completedFuture(hit);
+
+            Flight mine = new Flight();
+            Flight running = inFlight.putIfAbsent(key, mine);
+            if (running == null) return lead(key, mine, compute);
+
+            System.out.println("C03: result cache waiting for identical in-flight job " + key);
+            try {
+                running.computed.get();
+                return running.stored;
+            } catch (ExecutionException e) {
+                inFlight.remove(key, running);
+                System.out.println("C03: identical in-flight job " + key + " failed, computing again: "
+                        + e.getCause().getMessage());
+            }
+        }
+    }
+
+    private CompletableFuture<Long> lead(String key, Flight mine, Callable<CompletableFuture<Long>> compute)
+            throws Exception {
+        mine.stored.whenComplete((imageId, err) -> inFlight.remove(key, mine));
+        CompletableFuture<Long> store;
+        try {
+            // it may have been stored while we were between lookup and putIfAbsent
+            Long hit = lookup(key);
+            store = hit != null ? CompletableFuture.completedFuture(hit) : compute.call();
+        } catch (Exception e) {
+            // removed first, so a waiter that wakes up does not find this flight again
+            inFlight.remove(key, mine);
+            mine.computed.completeExceptionally(e);
+            mine.stored.completeExceptionally(e);
+            throw e;
+        }
+        mine.computed.complete(null);
+        store.whenComplete((imageId, err) -> {
+            if (err != null) {
+                mine.stored.completeExceptionally(err);
+            } else {
+                put(key, imageId);
+                mine.stored.complete(imageId);
+            }
+        });
+        return mine.stored;
+    }
+
+    private Long lookup(String key) {
+        synchronized (this) {
+            Long v = lru.get(key);
+            if (v != null) {
+                System.out.println("C03: result cache hit (memory) " + key + " -> imageId=" + v);
+                return v;
+            }
+        }
+        Long v = readDisk(key);
+        if (v != null) {
+            System.out.println("C03: result cache hit (disk) " + key + " -> imageId=" + v);
+            putMemory(key, v);
+        }
+        return v;
+    }
+
+    private void put(String key, long imageId) {
+        putMemory(key, imageId);
+        writeDisk(key, imageId);
+    }
+
+    private synchronized void putMemory(String key, long imageId) {
+        if (lru.put(key, imageId) == null) bytes += entryBytes(key);
+        for (Iterator<Map.Entry<String, Long>> it = lru.entrySet().iterator(); bytes > maxBytes && it.hasNext(); ) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            bytes -= entryBytes(eldest.getKey());
+        }
+    }
+
+    private static long entryBytes(String key) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.length();
+    }
+
+    // --- disk tier ---
+
+    private Path file(String key) {
+        return dir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private Long readDisk(String key) {
+        if (dir == null) return null;
+        Path f = file(key);
+        try {
+            long v = Long.parseLong(Files.readString(f, StandardCharsets.US_ASCII).trim());
+            Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis()));
+            return v;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("C03: result cache disk read failed for " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, long imageId) {
+        if (dir == null) return;
+        try {
+            Path f = file(key);
+            Files.createDirectories(f.getParent());
+            Path tmp = Files.createTempFile(f.getParent(), "result-", ".tmp");
+            Files.writeString(tmp, Long.toString(imageId), StandardCharsets.US_ASCII);
+            Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("C03: result cache disk write failed for " + key + ": " + e.getMessage());
+        }
+    }
+
+    private void startSweeper() {
+        ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "c03-result-cache-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(60_000, diskTtlMs / 24);
+        ex.scheduleWithFixedDelay(this::sweepDisk, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    private void sweepDisk() {
+        long cutoff = System.currentTimeMillis() - diskTtlMs;
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).forEach(p -> {
+                try {
+                    if (Files.getLastModifiedTime(p).toMillis() < cutoff) Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                    // removed by another node
+                }
+            });
+        } catch (Exception e) {
+            System.out.println("C03: result cache sweep failed: " + e.getMessage());
+        }
+    }
+}
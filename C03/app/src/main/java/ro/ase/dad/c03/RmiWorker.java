@@ -0,0 +1,26 @@
+package ro.ase.dad.c03;
+
+/** Address of a ZoomService worker (its RMI registry). */
+public class RmiWorker {
+
+    public final String host;
+    public final int port;
+
+    public RmiWorker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /** Parses "host:port" (port defaults to 1099). */
+    public static RmiWorker parse(String spec) {
+        String p = spec.trim();
+        int colon = p.lastIndexOf(':');
+        if (colon < 0) return new RmiWorker(p, 1099);
+        return new RmiWorker(p.substring(0, colon), Integer.parseInt(p.substring(colon + 1).trim()));
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
@@ -1,15 +1,170 @@
 package ro.ase.dad.c03;
 
+import ro.ase.dad.rmi.BandRequest;
+import ro.ase.dad.rmi.PayloadCodec;
+import ro.ase.dad.rmi.RowChunk;
+import ro.ase.dad.rmi.ZoomResult;
 import ro.ase.dad.rmi.ZoomService;
 
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.ServerError;
+import java.rmi.ServerException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * RMI client for the zoom workers.
+ *
+ * Stubs are looked up once per host:port and shared by all MDB instances. A stub is
+ * only looked up again when a call (or the registry's health ping) shows it is stale:
+ * the worker restarted ({@link NoSuchObjectException}) or is unreachable ({@link ConnectException}).
+ * Those failures happen before the request reaches the worker, so the call is retried once.
+ */
 public class RmiZoomClient {
 
-    public byte[] call(String host, int port, byte[] bmp, int percent, boolean zoomIn) throws Exception {
+    private static final String SERVICE_NAME = "ZoomService";
+
+    // "deflate" or "identity" for band payloads; small bands are always sent raw
+    private static final String RMI_ENCODING = getenv("RMI_ENCODING", PayloadCodec.DEFLATE);
+    private static final int COMPRESS_MIN_BYTES = getint("RMI_COMPRESS_MIN_BYTES", 64 * 1024);
+
+    private static final Map<String, ZoomService> STUBS = new ConcurrentHashMap<>();
+
+    /**
+     * Zooms one band on a worker; {@code band} carries raw source rows. The result holds only the
+     * zoomed pixel rows and their geometry, for the caller to copy into the final image, plus the
+     * worker's start and finish times for the job's timeline.
+     */
+    public ZoomResult zoomBand(String host, int port, BandRequest band) throws Exception {
+        // bands of RMI_COMPRESS_MIN_BYTES or more go deflated when that actually shrinks them
+        byte[] deflated = PayloadCodec.isDeflate(RMI_ENCODING)
+                ? PayloadCodec.deflateIfWorthIt(band.payload, COMPRESS_MIN_BYTES) : null;
+        BandRequest req = deflated == null ? band : band.withPayload(deflated, PayloadCodec.DEFLATE);
+
+        ZoomService svc = stub(host, port);
+        try {
+            return decode(req, svc.zoomBand(req));
+        } catch (NoSuchObjectException | ConnectException | ConnectIOException e) {
+            System.out.println("C03: stale ZoomService stub for " + key(host, port) + ": " + e.getMessage());
+            STUBS.remove(key(host, port), svc);
+            return decode(req, stub(host, port).zoomBand(req));
+        }
+    }
+
+    private static ZoomResult decode(BandRequest req, ZoomResult r) {
+        if (req.encoding == null) return r;
+        return new ZoomResult(PayloadCodec.decode(req.encoding, r.rows), r.width, r.height, r.startedAt, r.finishedAt);
+    }
+
+    /**
+     * An open streaming session on one worker; rows are pushed top to bottom, headerless.
+     * Pushes are numbered in the order {@link #push} is called, so one thread must do the pushing.
+     */
+    public static final class Stream {
+        private final ZoomService svc;
+        private final long id;
+        private long nextSeq;
+        public final int dstW;
+        public final int dstH;
+
+        private Stream(ZoomService svc, long[] opened) {
+            this.svc = svc;
+            this.id = opened[0];
+            this.dstW = (int) opened[1];
+            this.dstH = (int) opened[2];
+        }
+
+        /**
+         * Sends the next source rows on {@code pushers} without waiting for the answer. The future
+         * yields the destination rows they complete; the worker zooms the chunks in push order.
+         */
+        public Future<byte[]> push(byte[] rows, ExecutorService pushers) {
+            long seq = nextSeq++;
+            return pushers.submit(() ->
+                    svc.pushRows(id, seq, RowChunk.encode(rows, RMI_ENCODING, COMPRESS_MIN_BYTES)).decode());
+        }
+
+        public void close() {
+            try {
+                svc.closeStream(id);
+            } catch (Exception e) {
+                System.out.println("C03: closeStream " + id + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public Stream openStream(String host, int port, int width, int height, int bpp,
+                             int srcY0, int dstY0, int dstY1, int percent, boolean zoomIn) throws Exception {
+        ZoomService svc = stub(host, port);
+        try {
+            return new Stream(svc, svc.openStream(width, height, bpp, srcY0, dstY0, dstY1, percent, zoomIn,
+                    RMI_ENCODING, COMPRESS_MIN_BYTES));
+        } catch (NoSuchObjectException | ConnectException | ConnectIOException e) {
+            System.out.println("C03: stale ZoomService stub for " + key(host, port) + ": " + e.getMessage());
+            STUBS.remove(key(host, port), svc);
+            svc = stub(host, port);
+            return new Stream(svc, svc.openStream(width, height, bpp, srcY0, dstY0, dstY1, percent, zoomIn,
+                    RMI_ENCODING, COMPRESS_MIN_BYTES));
+        }
+    }
+
+    /**
+     * True when a call failed on the way to or from the worker (connect, I/O, a read timeout),
+     * so the worker itself is suspect. A worker that ran the call and reported an error answers
+     * with a ServerException or ServerError; bad input arrives as IllegalArgumentException.
+     */
+    public static boolean transportFailure(Throwable e) {
+        return e instanceof RemoteException && !(e instanceof ServerException) && !(e instanceof ServerError);
+    }
+
+    /**
+     * Health check of one worker; a failed ping also drops its cached stub. The worker registry
+     * calls this for every known worker each RMI_HEALTH_INTERVAL_MS.
+     */
+    public void ping(String host, int port) throws Exception {
+        ZoomService svc = stub(host, port);
+        try {
+            svc.ping();
+        } catch (Exception e) {
+            STUBS.remove(key(host, port), svc);
+            throw e;
+        }
+    }
+
+    private static ZoomService stub(String host, int port) throws Exception {
+        String key = key(host, port);
+        ZoomService svc = STUBS.get(key);
+        if (svc != null) return svc;
+
         Registry reg = LocateRegistry.getRegistry(host, port);
-        ZoomService svc = (ZoomService) reg.lookup("ZoomService");
-        return svc.zoomBmp(bmp, percent, zoomIn);
+        svc = (ZoomService) reg.lookup(SERVICE_NAME);
+        ZoomService prev = STUBS.putIfAbsent(key, svc);
+        return prev != null ? prev : svc;
+    }
+
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    private static String getenv(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v.trim();
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
     }
-}
\ No newline at end of file
+}
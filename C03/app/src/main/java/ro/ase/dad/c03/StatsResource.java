@@ -0,0 +1,27 @@
+package ro.ase.dad.c03;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import java.util.Map;
+
+@Path("/stats")
+@Produces(MediaType.APPLICATION_JSON)
+public class StatsResource {
+
+    /** Latency, volume and in-flight count of result stores to c06. */
+    @GET
+    @Path("/c06")
+    public Map<String, Object> c06() {
+        return HttpToC06Client.stats();
+    }
+
+    /** Duplicate band requests sent for stragglers, and how often the duplicate won. */
+    @GET
+    @Path("/hedge")
+    public Map<String, Object> hedge() {
+        return BandScatterGather.hedgeStats();
+    }
+}
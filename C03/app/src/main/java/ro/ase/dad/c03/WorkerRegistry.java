@@ -0,0 +1,255 @@
+package ro.ase.dad.c03;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ZoomService workers this node can schedule bands on.
+ *
+ * Workers listed in RMI_WORKERS (default: the RMI_TOP_* and RMI_BOTTOM_* pair) are always known.
+ * Others announce themselves over HTTP ({@link WorkerResource}) with their core count and stay
+ * registered while their announcements keep coming (WORKER_LEASE_MS). A worker that a band call or
+ * health ping cannot reach is drained: it gets no new bands until a later ping succeeds. A worker
+ * that answers with an error (bad input, a failed zoom) stays in rotation.
+ *
+ * Bands are assigned one at a time to the worker with the lowest expected finish: its queued
+ * bands (in flight plus those already planned for this job) divided by its speed. Speed is the
+ * moving average of the bytes per second its band calls achieved. A worker without samples yet
+ * is assumed to be as fast per core as the measured workers.
+ *
+ * Fast-lane bands go to the workers with the fewest bands in flight first, and speed only breaks
+ * ties. An idle worker is taken over a faster one that is busy, so a small job does not queue
+ * behind the bands of a large one while another worker is free. Workers have no priorities,
+ * so a fast band on a busy worker still shares its cores with the batch band there.
+ */
+public final class WorkerRegistry {
+
+    private static final long LEASE_MS = getint("WORKER_LEASE_MS", 15_000);
+    private static final long HEALTH_INTERVAL_MS = getint("RMI_HEALTH_INTERVAL_MS", 10_000);
+    private static final double EWMA_ALPHA = 0.2;
+
+    public static final class Worker {
+        public final RmiWorker address;
+        final boolean pinned;           // from RMI_WORKERS: no lease
+        volatile int cores;
+        volatile long lastSeen;
+        volatile boolean drained;
+        private int inFlight;           // guarded by this
+        private double bytesPerSec;     // guarded by this; 0 until the first sample
+        private long calls;             // guarded by this
+        private long failures;          // guarded by this
+
+        Worker(RmiWorker address, int cores, boolean pinned) {
+            this.address = address;
+            this.cores = Math.max(1, cores);
+            this.pinned = pinned;
+            this.lastSeen = System.currentTimeMillis();
+        }
+
+        synchronized void begin() {
+            inFlight++;
+        }
+
+        synchronized void end(long bytes, long nanos, boolean ok) {
+            inFlight--;
+            calls++;
+            if (!ok) {
+                failures++;
+                return;
+            }
+            double sample = bytes * 1e9 / Math.max(1, nanos);
+            bytesPerSec = bytesPerSec == 0 ? sample : EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * bytesPerSec;
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("worker", address.toString());
+            m.put("cores", cores);
+            m.put("pinned", pinned);
+            m.put("drained", drained);
+            m.put("inFlight", inFlight);
+            m.put("bytesPerSec", Math.round(bytesPerSec));
+            m.put("calls", calls);
+            m.put("failures", failures);
+            return m;
+        }
+    }
+
+    private static final WorkerRegistry INSTANCE = new WorkerRegistry();
+
+    private final Map<String, Worker> workers = new ConcurrentHashMap<>();
+    private final RmiZoomClient rmi = new RmiZoomClient();
+
+    private WorkerRegistry() {
+        String defaults = getenv("RMI_TOP_HOST", "c04") + ":" + getint("RMI_TOP_PORT", 1099) + ","
+                + getenv("RMI_BOTTOM_HOST", "c05") + ":" + getint("RMI_BOTTOM_PORT", 1099);
+        for (String part : getenv("RMI_WORKERS", defaults).split(",")) {
+            if (part.isBlank()) continue;
+            RmiWorker w = RmiWorker.parse(part);
+            workers.put(w.toString(), new Worker(w, 1, true));
+        }
+        if (HEALTH_INTERVAL_MS > 0) {
+            ScheduledExecutorService ex = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "c03-worker-registry");
+                t.setDaemon(true);
+                return t;
+            });
+            ex.scheduleWithFixedDelay(this::checkWorkers, HEALTH_INTERVAL_MS, HEALTH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static WorkerRegistry get() {
+        return INSTANCE;
+    }
+
+    /** Registers a worker or renews its lease. */
+    public void announce(String host, int port, int cores) {
+        RmiWorker address = new RmiWorker(host, port);
+        Worker w = workers.computeIfAbsent(address.toString(), k -> {
+            System.out.println("C03: worker " + k + " registered (" + cores + " cores)");
+            return new Worker(address, cores, false);
+        });
+        w.cores = Math.max(1, cores);
+        w.lastSeen = System.currentTimeMillis();
+    }
+
+    public void remove(String host, int port) {
+        String key = new RmiWorker(host, port).toString();
+        Worker w = workers.get(key);
+        if (w != null && !w.pinned && workers.remove(key, w)) {
+            System.out.println("C03: worker " + key + " deregistered");
+        }
+    }
+
+    /** Workers that can take bands now; never empty (falls back to every known worker). */
+    public List<Worker> active() {
+        List<Worker> out = new ArrayList<>();
+        for (Worker w : workers.values()) {
+            if (!w.drained) out.add(w);
+        }
+        if (out.isEmpty()) out.addAll(workers.values());
+        if (out.isEmpty()) throw new IllegalStateException("No ZoomService workers registered");
+        return out;
+    }
+
+    /** Picks a worker for each of {@code bandCount} equally sized bands of a batch-lane job. */
+    public List<Worker> assign(int bandCount) {
+        return assign(bandCount, false);
+    }
+
+    /** Picks a worker for each of {@code bandCount} equally sized bands; see the class comment for the fast lane. */
+    public List<Worker> assign(int bandCount, boolean fastLane) {
+        List<Worker> candidates = active();
+        int n = candidates.size();
+        double[] speed = new double[n];
+        int[] queued = new int[n];
+
+        double perCore = 0;
+        int measuredCores = 0;
+        for (int i = 0; i < n; i++) {
+            Worker w = candidates.get(i);
+            synchronized (w) {
+                speed[i] = w.bytesPerSec;
+                queued[i] = w.inFlight;
+            }
+            if (speed[i] > 0) {
+                perCore += speed[i];
+                measuredCores += w.cores;
+            }
+        }
+        perCore = measuredCores == 0 ? 1 : perCore / measuredCores;
+        for (int i = 0; i < n; i++) {
+            if (speed[i] == 0) speed[i] = perCore * candidates.get(i).cores;
+        }
+
+        List<Worker> out = new ArrayList<>(bandCount);
+        for (int b = 0; b < bandCount; b++) {
+            int best = 0;
+            for (int i = 1; i < n; i++) {
+                if (fastLane && queued[i] != queued[best]) {
+                    if (queued[i] < queued[best]) best = i;
+                } else if ((queued[i] + 1) / speed[i] < (queued[best] + 1) / speed[best]) {
+                    best = i;
+                }
+            }
+            queued[best]++;
+            out.add(candidates.get(best));
+        }
+        return out;
+    }
+
+    /** The least loaded active worker other than {@code busy}, or null if there is none. */
+    public Worker pickOther(Worker busy) {
+        Worker best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Worker w : workers.values()) {
+            if (w == busy || w.drained) continue;
+            double score;
+            synchronized (w) {
+                score = (w.inFlight + 1) / (w.bytesPerSec > 0 ? w.bytesPerSec : 1.0);
+            }
+            if (best == null || score < bestScore) {
+                best = w;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Marks a worker that could not be reached; it gets no new bands until a ping succeeds. */
+    public void drain(Worker w, Exception cause) {
+        if (!w.drained) {
+            w.drained = true;
+            System.out.println("C03: draining worker " + w.address + ": " + cause.getMessage());
+        }
+    }
+
+    public Collection<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Worker w : workers.values()) out.add(w.snapshot());
+        return out;
+    }
+
+    private void checkWorkers() {
+        long now = System.currentTimeMillis();
+        for (Worker w : workers.values()) {
+            if (!w.pinned && now - w.lastSeen > LEASE_MS) {
+                if (workers.remove(w.address.toString(), w)) {
+                    System.out.println("C03: worker " + w.address + " lease expired");
+                }
+                continue;
+            }
+            try {
+                rmi.ping(w.address.host, w.address.port);
+                if (w.drained) {
+                    w.drained = false;
+                    System.out.println("C03: worker " + w.address + " is back");
+                }
+            } catch (Exception e) {
+                drain(w, e);
+            }
+        }
+    }
+
+    private static String getenv(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ro.ase.dad.c03;
+
+import jakarta.json.JsonObject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Worker registry endpoint. ZoomService workers POST {"host","port","cores"} here every few
+ * seconds (REGISTRY_URL on the worker) and DELETE /workers/{host}/{port} when they shut down.
+ *
+ * Whoever can register a worker receives job images, so both calls need the shared
+ * WORKER_REGISTRY_TOKEN in the X-Registry-Token header. Without a token set on c03, registration
+ * is off and only the static RMI_WORKERS list is used.
+ */
+@Path("/workers")
+@Produces(MediaType.APPLICATION_JSON)
+public class WorkerResource {
+
+    private static final byte[] TOKEN = token();
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response announce(@HeaderParam("X-Registry-Token") String token, JsonObject body) {
+        authorize(token);
+        WorkerRegistry.get().announce(host(body), port(body), body.getInt("cores", 1));
+        return Response.noContent().build();
+    }
+
+    @DELETE
+    @Path("/{host}/{port}")
+    public Response remove(@HeaderParam("X-Registry-Token") String token,
+                           @PathParam("host") String host, @PathParam("port") int port) {
+        authorize(token);
+        WorkerRegistry.get().remove(host, port);
+        return Response.noContent().build();
+    }
+
+    /** Known workers with their load, speed and drain state. */
+    @GET
+    public Collection<Map<String, Object>> list() {
+        return WorkerRegistry.get().snapshot();
+    }
+
+    private static void authorize(String token) {
+        if (TOKEN == null) {
+            throw new WebApplicationException("worker registration is disabled", Response.Status.FORBIDDEN);
+        }
+        byte[] given = token == null ? new byte[0] : token.getBytes(StandardCharsets.UTF_8);
+        // constant time, so the token cannot be guessed byte by byte
+        if (!MessageDigest.isEqual(TOKEN, given)) {
+            throw new WebApplicationException("bad registry token", Response.Status.UNAUTHORIZED);
+        }
+    }
+
+    private static byte[] token() {
+        String v = System.getenv("WORKER_REGISTRY_TOKEN");
+        return (v == null || v.isBlank()) ? null : v.trim().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String host(JsonObject body) {
+        String host = body == null ? null : body.getString("host", null);
+        if (host == null || host.isBlank() || !host.matches("[A-Za-z0-9.\\-]+")) {
+            throw new WebApplicationException("host is required", Response.Status.BAD_REQUEST);
+        }
+        return host;
+    }
+
+    private static int port(JsonObject body) {
+        int port = body.getInt("port", 1099);
+        if (port < 1 || port > 65535) throw new WebApplicationException("bad port", Response.Status.BAD_REQUEST);
+        return port;
+    }
+}
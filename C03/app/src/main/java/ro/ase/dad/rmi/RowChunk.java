@@ -0,0 +1,36 @@
+package ro.ase.dad.rmi;
+
+import java.io.Serializable;
+
+/**
+ * One chunk of a stream session ({@link ZoomService#pushRows}), in either direction: whole rows
+ * without a BMP header, top to bottom, each padded to its row stride, encoded with
+ * {@code encoding} (see PayloadCodec; null for raw bytes). Each side picks the encoding per chunk
+ * from the session's policy, so a chunk that does not shrink goes raw.
+ */
+public final class RowChunk implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final byte[] rows;
+    public final String encoding;
+
+    public RowChunk(byte[] rows, String encoding) {
+        this.rows = rows;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Encodes {@code raw} for the wire: deflated when {@code encoding} is deflate, {@code raw} has at
+     * least {@code minBytes} and deflating actually shrinks it; raw otherwise.
+     */
+    public static RowChunk encode(byte[] raw, String encoding, int minBytes) {
+        byte[] deflated = PayloadCodec.isDeflate(encoding) ? PayloadCodec.deflateIfWorthIt(raw, minBytes) : null;
+        return deflated == null ? new RowChunk(raw, null) : new RowChunk(deflated, PayloadCodec.DEFLATE);
+    }
+
+    /** The raw rows. */
+    public byte[] decode() {
+        return PayloadCodec.decode(encoding, rows);
+    }
+}
@@ -4,5 +4,24 @@ import java.rmi.Remote;
 import java.rmi.RemoteException;
 
 public interface ZoomService extends Remote {
-    byte[] zoomBmp(byte[] bmpBytes, int percent, boolean zoomIn) throws RemoteException;
+    /** Zooms one band of a job; see BandRequest and ZoomResult. */
+    ZoomResult zoomBand(BandRequest band) throws RemoteException;
+
+    /*
+     * Streaming nearest-neighbour zoom of destination rows [dstY0, dstY1) of a width x height
+     * image, with the whole image's geometry like zoomBand. Rows travel as RowChunks; the pushed
+     * source rows start at srcY0. Both sides deflate a chunk of compressMinBytes or more when
+     * encoding is deflate and that shrinks it, like zoomBand's payloads.
+     * openStream returns {sessionId, dstWidth, dstY1 - dstY0}; pushRows returns the zoomed rows
+     * completed by that chunk. Chunks are numbered 0, 1, 2, ... by seq and zoomed in that order,
+     * so several pushes of one session may be in flight at once.
+     */
+    long[] openStream(int width, int height, int bpp, int srcY0, int dstY0, int dstY1,
+                      int percent, boolean zoomIn, String encoding, int compressMinBytes) throws RemoteException;
+
+    RowChunk pushRows(long sessionId, long seq, RowChunk rows) throws RemoteException;
+
+    void closeStream(long sessionId) throws RemoteException;
+
+    void ping() throws RemoteException;
 }
\ No newline at end of file
@@ -25,7 +25,32 @@ if ! (echo >/dev/tcp/${BROKER_HOST}/${BROKER_PORT}) >/dev/null 2>&1; then
   exit 1
 fi
 
-export JAVA_OPTS="${JAVA_OPTS:-} -Djava.net.preferIPv4Stack=true"
+RMI_RESPONSE_TIMEOUT_MS="${RMI_RESPONSE_TIMEOUT_MS:-${RMI_BAND_TIMEOUT_MS:-120000}}"
+
+export JAVA_OPTS="${JAVA_OPTS:-} -Djava.net.preferIPv4Stack=true -Dsun.rmi.transport.tcp.responseTimeout=${RMI_RESPONSE_TIMEOUT_MS}"
+
+# idle connections to c06 stay open this long for the next store
+JAVA_OPTS="${JAVA_OPTS} -Djdk.httpclient.keepalive.timeout=${C06_KEEPALIVE_S:-60}"
+
+# BmpJobMdb consumer settings (TomEE overrides the annotation's activation config from these)
+MDB_MAX_SESSIONS="${MDB_MAX_SESSIONS:-4}"
+JAVA_OPTS="${JAVA_OPTS} -DBmpJobMdb.activation.destination=${JMS_BMP_QUEUE:-Consumer.c03.bmp.topic}"
+JAVA_OPTS="${JAVA_OPTS} -DBmpJobMdb.activation.maxSessions=${MDB_MAX_SESSIONS}"
+JAVA_OPTS="${JAVA_OPTS} -DBmpJobMdb.activation.maxMessagesPerSessions=${MDB_PREFETCH:-1}"
+JAVA_OPTS="${JAVA_OPTS} -DBmpJobMdb.activation.maximumRedeliveries=${MDB_MAX_REDELIVERIES:-3}"
+JAVA_OPTS="${JAVA_OPTS} -DBmpJobMdb.activation.initialRedeliveryDelay=${MDB_REDELIVERY_DELAY_MS:-2000}"
+
+# FastBmpJobMdb: sessions reserved for small jobs (the fast lane)
+MDB_FAST_SESSIONS="${MDB_FAST_SESSIONS:-2}"
+JAVA_OPTS="${JAVA_OPTS} -DFastBmpJobMdb.activation.destination=${JMS_BMP_FAST_QUEUE:-Consumer.c03.bmp.fast.topic}"
+JAVA_OPTS="${JAVA_OPTS} -DFastBmpJobMdb.activation.maxSessions=${MDB_FAST_SESSIONS}"
+JAVA_OPTS="${JAVA_OPTS} -DFastBmpJobMdb.activation.maxMessagesPerSessions=${MDB_PREFETCH:-1}"
+JAVA_OPTS="${JAVA_OPTS} -DFastBmpJobMdb.activation.maximumRedeliveries=${MDB_MAX_REDELIVERIES:-3}"
+JAVA_OPTS="${JAVA_OPTS} -DFastBmpJobMdb.activation.initialRedeliveryDelay=${MDB_REDELIVERY_DELAY_MS:-2000}"
+
+# the MDB container must allow at least as many instances as there are sessions
+JAVA_OPTS="${JAVA_OPTS} -DMyMdbContainer.InstanceLimit=$((MDB_MAX_SESSIONS + MDB_FAST_SESSIONS))"
+export JAVA_OPTS
 
 log "Starting TomEE..."
 exec /opt/tomee/bin/catalina.sh run
\ No newline at end of file
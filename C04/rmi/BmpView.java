@@ -0,0 +1,153 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-only view of an uncompressed 24/32 bpp BMP received as a byte[].
+ * Only the header fields are decoded; the pixel rows stay in the original array
+ * and are addressed through {@link #rowOffset(int)}.
+ *
+ * A view can also hold only some rows of an image ({@link #rows}): width, height and the row
+ * numbers stay those of the whole image, so code reading it sees the image's real size and edges.
+ */
+public final class BmpView {
+
+    /** Largest byte[] the JVM reliably allocates. */
+    static final int MAX_ARRAY_BYTES = Integer.MAX_VALUE - 8;
+
+    public final byte[] bytes;
+    public final int dataOffset;   // bfOffBits
+    public final int width;
+    public final int height;       // pozitiv => bottom-up, negativ => top-down
+    public final int absHeight;
+    public final int bpp;          // 24 sau 32
+    public final int rowStride;    // bytes per row incl. padding
+    public final boolean topDown;  // height < 0
+    public final int firstRow;     // rows [firstRow, firstRow + rowCount) are in bytes
+    public final int rowCount;
+
+    private BmpView(byte[] bytes, int dataOffset, int width, int height, int bpp, int firstRow, int rowCount) {
+        this.bytes = bytes;
+        this.dataOffset = dataOffset;
+        this.width = width;
+        this.height = height;
+        this.absHeight = Math.abs(height);
+        this.bpp = bpp;
+        this.rowStride = rowStride(width, bpp);
+        this.topDown = height < 0;
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+    }
+
+    public static BmpView of(byte[] bmpBytes) {
+        if (bmpBytes == null || bmpBytes.length < 54) {
+            throw new IllegalArgumentException("Invalid BMP: too small");
+        }
+        if (bmpBytes[0] != 'B' || bmpBytes[1] != 'M') {
+            throw new IllegalArgumentException("Invalid BMP: missing BM signature");
+        }
+
+        ByteBuffer bb = ByteBuffer.wrap(bmpBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        int dataOffset = bb.getInt(10);
+
+        int dibSize = bb.getInt(14);
+        if (dibSize < 40) {
+            throw new IllegalArgumentException("Unsupported DIB header size: " + dibSize);
+        }
+
+        int width = bb.getInt(18);
+        int height = bb.getInt(22);
+        short planes = bb.getShort(26);
+        short bpp = bb.getShort(28);
+        int compression = bb.getInt(30);
+
+        if (planes != 1) throw new IllegalArgumentException("Invalid BMP planes: " + planes);
+        if (!(bpp == 24 || bpp == 32)) throw new IllegalArgumentException("Unsupported BMP bpp: " + bpp);
+        if (compression != 0) throw new IllegalArgumentException("Unsupported BMP compression: " + compression);
+        if (width <= 0 || height == 0 || height == Integer.MIN_VALUE) throw new IllegalArgumentException("Invalid BMP size: " + width + "x" + height);
+
+        if (dataOffset <= 0 || dataOffset >= bmpBytes.length) {
+            throw new IllegalArgumentException("Invalid BMP data offset: " + dataOffset);
+        }
+
+        BmpView v = new BmpView(bmpBytes, dataOffset, width, height, bpp, 0, Math.abs(height));
+        if ((long) dataOffset + (long) v.rowStride * v.absHeight > bmpBytes.length) {
+            throw new IllegalArgumentException("Invalid BMP: pixel data out of range");
+        }
+        return v;
+    }
+
+    /**
+     * View of header-less pixel rows [firstRow, firstRow + n) of a {@code width} x {@code height}
+     * image ({@code height} signed as in a BMP header), stored in the image's file order.
+     */
+    public static BmpView rows(byte[] pixels, int width, int height, int bpp, int firstRow) {
+        if (!(bpp == 24 || bpp == 32)) throw new IllegalArgumentException("Unsupported BMP bpp: " + bpp);
+        if (width <= 0 || height == 0 || height == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Invalid BMP size: " + width + "x" + height);
+        }
+        long stride = (long) width * (bpp / 8);
+        stride = (stride + 3) / 4 * 4;
+        if (stride > Integer.MAX_VALUE || pixels == null || pixels.length == 0 || pixels.length % stride != 0) {
+            throw new IllegalArgumentException("Band is not a whole number of " + width + " px rows: "
+                    + (pixels == null ? 0 : pixels.length) + " bytes");
+        }
+        int n = (int) (pixels.length / stride);
+        if (firstRow < 0 || (long) firstRow + n > Math.abs((long) height)) {
+            throw new IllegalArgumentException("Rows " + firstRow + ".." + ((long) firstRow + n)
+                    + " outside an image of " + Math.abs((long) height) + " rows");
+        }
+        return new BmpView(pixels, 0, width, height, bpp, firstRow, n);
+    }
+
+    /** Bytes per row incl. padding; IllegalArgumentException when one row would not fit an array. */
+    public static int rowStride(int width, int bpp) {
+        long stride = ((width * (long) (bpp / 8) + 3) / 4) * 4;
+        if (width <= 0 || stride > MAX_ARRAY_BYTES) {
+            throw new IllegalArgumentException("Invalid row: " + width + " pixels at " + bpp + " bpp");
+        }
+        return (int) stride;
+    }
+
+    /**
+     * Offset in {@link #bytes} of the row at {@code visualY}, counted from the top of the image;
+     * the row must be one this view holds.
+     */
+    public int rowOffset(int visualY) {
+        int local = visualY - firstRow;
+        int fileRow = topDown ? local : (rowCount - 1 - local);
+        return dataOffset + fileRow * rowStride;
+    }
+
+    /**
+     * Allocates the output BMP file for a resized copy of this image, with the header
+     * copied and patched (file size, width, height, image size). Pixels start at {@link #dataOffset}.
+     */
+    public byte[] newFile(int newWidth, int newHeightAbs, boolean newTopDown) {
+        long size = (long) rowStride(newWidth, bpp) * newHeightAbs;
+        if (newHeightAbs <= 0 || dataOffset + size > MAX_ARRAY_BYTES) {
+            throw new IllegalArgumentException("Zoomed image too large: " + newWidth + "x" + newHeightAbs);
+        }
+        int newImageSize = (int) size;
+        byte[] out = new byte[dataOffset + newImageSize];
+        System.arraycopy(bytes, 0, out, 0, dataOffset);
+
+        ByteBuffer hb = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+        hb.putInt(2, out.length);                                   // bfSize
+        hb.putInt(18, newWidth);                                    // biWidth
+        hb.putInt(22, newTopDown ? -newHeightAbs : newHeightAbs);   // biHeight
+        hb.putInt(34, newImageSize);
+        return out;
+    }
+
+    /** Offset in a file from {@link #newFile} of the row at {@code visualY}. */
+    public int outRowOffset(int visualY, int newHeightAbs, int newRowStride) {
+        return outRowOffset(dataOffset, visualY, newHeightAbs, newRowStride);
+    }
+
+    /** Same, for an output whose pixel array starts at {@code base} (0 for header-less rows). */
+    public int outRowOffset(int base, int visualY, int newHeightAbs, int newRowStride) {
+        int fileRow = topDown ? visualY : (newHeightAbs - 1 - visualY);
+        return base + fileRow * newRowStride;
+    }
+}
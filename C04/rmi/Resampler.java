@@ -0,0 +1,201 @@
+import java.util.Arrays;
+
+/**
+ * Separable bilinear / bicubic / area-average resampling.
+ *
+ * Tap tables (source index + weight per destination column and row) are computed once per image.
+ * Each needed source row is converted to floats once and filtered horizontally into a float row
+ * kept in a small ring; destination rows are then a weighted sum of those rows. Both passes run
+ * on {@link RowBlend}, vectorized when possible: the horizontal one as a gather through per-element
+ * tables (source element and weight of every tap, for every channel of every destination column).
+ */
+final class Resampler {
+
+    private static final RowBlend BLEND = RowBlend.best();
+
+    /** Per destination index: {@code n} source indices (clamped to the image) and weights summing to 1. */
+    static final class Taps {
+        final int n;
+        final int[] idx;
+        final float[] w;
+
+        Taps(int n, int dstLen) {
+            this.n = n;
+            this.idx = new int[n * dstLen];
+            this.w = new float[n * dstLen];
+        }
+    }
+
+    private final BmpView src;
+    private final byte[] out;
+    private final int outBase;       // start of the pixel array in out
+    private final int outY0, outY1;  // destination rows held by out
+    private final int dstW, channels, dstRowStride;
+    private final Taps ty;
+    private final int[][] colIndex;  // [tap][x * channels + c]: element of the float source row
+    private final float[][] colWeight;
+
+    /** Writes into {@code out}, which holds destination rows [outY0, outY1) of a dstW x dstH zoom. */
+    Resampler(BmpView src, byte[] out, int outBase, int outY0, int outY1,
+              ResampleMode mode, double factor, int dstW, int dstH) {
+        this.src = src;
+        this.out = out;
+        this.outBase = outBase;
+        this.outY0 = outY0;
+        this.outY1 = outY1;
+        this.dstW = dstW;
+        this.channels = src.bpp / 8;
+        this.dstRowStride = BmpView.rowStride(dstW, src.bpp);
+        this.ty = taps(mode, src.absHeight, dstH, factor);
+
+        Taps tx = taps(mode, src.width, dstW, factor);
+        int rowLen = dstW * channels;
+        this.colIndex = new int[tx.n][rowLen];
+        this.colWeight = new float[tx.n][rowLen];
+        for (int k = 0; k < tx.n; k++) {
+            for (int x = 0, i = 0; x < dstW; x++) {
+                for (int c = 0; c < channels; c++, i++) {
+                    colIndex[k][i] = tx.idx[x * tx.n + k] * channels + c;
+                    colWeight[k][i] = tx.w[x * tx.n + k];
+                }
+            }
+        }
+    }
+
+    /** First source row that destination rows [y0, y1) read. */
+    int firstSourceRow(int y0, int y1) {
+        int min = Integer.MAX_VALUE;
+        for (int i = y0 * ty.n; i < y1 * ty.n; i++) min = Math.min(min, ty.idx[i]);
+        return min;
+    }
+
+    /** Last source row that destination rows [y0, y1) read. */
+    int lastSourceRow(int y0, int y1) {
+        int max = -1;
+        for (int i = y0 * ty.n; i < y1 * ty.n; i++) max = Math.max(max, ty.idx[i]);
+        return max;
+    }
+
+    static Taps taps(ResampleMode mode, int srcLen, int dstLen, double factor) {
+        switch (mode) {
+            case BILINEAR: return bilinear(srcLen, dstLen, factor);
+            case BICUBIC:  return bicubic(srcLen, dstLen, factor);
+            case AREA:     return area(srcLen, dstLen, factor);
+            default: throw new IllegalArgumentException("Not a filtered mode: " + mode);
+        }
+    }
+
+    private static Taps bilinear(int srcLen, int dstLen, double factor) {
+        Taps t = new Taps(2, dstLen);
+        for (int i = 0; i < dstLen; i++) {
+            double center = (i + 0.5) / factor - 0.5;
+            int i0 = (int) Math.floor(center);
+            float f = (float) (center - i0);
+            set(t, i, 0, clamp(i0, srcLen), 1f - f);
+            set(t, i, 1, clamp(i0 + 1, srcLen), f);
+        }
+        return t;
+    }
+
+    private static Taps bicubic(int srcLen, int dstLen, double factor) {
+        Taps t = new Taps(4, dstLen);
+        for (int i = 0; i < dstLen; i++) {
+            double center = (i + 0.5) / factor - 0.5;
+            int i0 = (int) Math.floor(center);
+            double sum = 0;
+            for (int k = 0; k < 4; k++) {
+                double w = cubic(Math.abs(center - (i0 - 1 + k)));
+                t.idx[i * 4 + k] = clamp(i0 - 1 + k, srcLen);
+                t.w[i * 4 + k] = (float) w;
+                sum += w;
+            }
+            for (int k = 0; k < 4; k++) t.w[i * 4 + k] /= (float) sum;
+        }
+        return t;
+    }
+
+    // Keys cubic convolution, a = -0.5 (Catmull-Rom)
+    private static double cubic(double x) {
+        final double a = -0.5;
+        if (x <= 1) return ((a + 2) * x - (a + 3)) * x * x + 1;
+        if (x < 2) return ((a * x - 5 * a) * x + 8 * a) * x - 4 * a;
+        return 0;
+    }
+
+    /** Each destination pixel averages the source interval [i / factor, (i + 1) / factor). */
+    private static Taps area(int srcLen, int dstLen, double factor) {
+        double span = 1.0 / factor;
+        int n = (int) Math.ceil(span) + 1;
+        Taps t = new Taps(n, dstLen);
+        for (int i = 0; i < dstLen; i++) {
+            double lo = i * span;
+            double hi = Math.min(lo + span, srcLen);
+            int first = (int) Math.floor(lo);
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                int j = first + k;
+                double overlap = Math.max(0, Math.min(hi, j + 1) - Math.max(lo, j));
+                t.idx[i * n + k] = clamp(j, srcLen);
+                t.w[i * n + k] = (float) overlap;
+                sum += overlap;
+            }
+            if (sum <= 0) {
+                // past the last source row/column (rounding of the output size): repeat the edge
+                t.w[i * n] = 1f;
+                sum = 1;
+            }
+            for (int k = 0; k < n; k++) t.w[i * n + k] /= (float) sum;
+        }
+        return t;
+    }
+
+    private static void set(Taps t, int i, int k, int idx, float w) {
+        t.idx[i * t.n + k] = idx;
+        t.w[i * t.n + k] = w;
+    }
+
+    private static int clamp(int i, int len) {
+        return i < 0 ? 0 : (i >= len ? len - 1 : i);
+    }
+
+    /** Writes destination rows [y0, y1). Safe to call concurrently for disjoint ranges. */
+    void rows(int y0, int y1) {
+        int rowLen = dstW * channels;
+        float[] srcRow = new float[src.width * channels];
+        int ringSize = ty.n + 1;
+        float[][] ring = new float[ringSize][rowLen];
+        int[] ringRow = new int[ringSize];
+        Arrays.fill(ringRow, -1);
+
+        float[][] rows = new float[ty.n][];
+        float[] weights = new float[ty.n];
+        float[] acc = new float[rowLen];
+
+        for (int y = y0; y < y1; y++) {
+            for (int k = 0; k < ty.n; k++) {
+                int sy = ty.idx[y * ty.n + k];
+                int slot = sy % ringSize;
+                if (ringRow[slot] != sy) {
+                    horizontal(sy, srcRow, ring[slot]);
+                    ringRow[slot] = sy;
+                }
+                rows[k] = ring[slot];
+                weights[k] = ty.w[y * ty.n + k];
+            }
+            BLEND.blend(rows, weights, ty.n, acc, rowLen);
+
+            int d = src.outRowOffset(outBase, y - outY0, outY1 - outY0, dstRowStride);
+            for (int i = 0; i < rowLen; i++) {
+                int v = (int) (acc[i] + 0.5f);
+                out[d + i] = (byte) (v < 0 ? 0 : (v > 255 ? 255 : v));
+            }
+        }
+    }
+
+    private void horizontal(int sy, float[] srcRow, float[] row) {
+        byte[] in = src.bytes;
+        int base = src.rowOffset(sy);
+        BLEND.widen(in, base, srcRow, srcRow.length);
+        BLEND.gather(srcRow, colIndex, colWeight, colIndex.length, row, row.length);
+    }
+}
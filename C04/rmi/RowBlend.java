@@ -0,0 +1,58 @@
+/**
+ * The two passes of the separable filters. Vertical: out[i] = sum(weights[k] * rows[k][i]) for
+ * k < taps; every element of a row uses the same weights. Horizontal: out[i] =
+ * sum(weights[k][i] * src[index[k][i]]); every element has its own source element and weight, from
+ * tables built once per image, so the loads are a gather. Widen turns a row of unsigned source
+ * bytes into the floats both passes read.
+ */
+public interface RowBlend {
+
+    void blend(float[][] rows, float[] weights, int taps, float[] out, int len);
+
+    void gather(float[] src, int[][] index, float[][] weights, int taps, float[] out, int len);
+
+    void widen(byte[] src, int off, float[] out, int len);
+
+    /** Vector API implementation when jdk.incubator.vector is available, scalar otherwise. */
+    static RowBlend best() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (RowBlend) Class.forName("VectorRowBlend").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.out.println("Vector API unavailable, using scalar resampling: " + e);
+            }
+        }
+        return new Scalar();
+    }
+
+    final class Scalar implements RowBlend {
+        @Override
+        public void blend(float[][] rows, float[] weights, int taps, float[] out, int len) {
+            float[] r0 = rows[0];
+            float w0 = weights[0];
+            for (int i = 0; i < len; i++) out[i] = w0 * r0[i];
+            for (int k = 1; k < taps; k++) {
+                float[] r = rows[k];
+                float w = weights[k];
+                for (int i = 0; i < len; i++) out[i] += w * r[i];
+            }
+        }
+
+        @Override
+        public void gather(float[] src, int[][] index, float[][] weights, int taps, float[] out, int len) {
+            int[] i0 = index[0];
+            float[] w0 = weights[0];
+            for (int i = 0; i < len; i++) out[i] = w0[i] * src[i0[i]];
+            for (int k = 1; k < taps; k++) {
+                int[] ik = index[k];
+                float[] wk = weights[k];
+                for (int i = 0; i < len; i++) out[i] += wk[i] * src[ik[i]];
+            }
+        }
+
+        @Override
+        public void widen(byte[] src, int off, float[] out, int len) {
+            for (int i = 0; i < len; i++) out[i] = src[off + i] & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link RowBlend} on the Java Vector API. Only loaded through {@link RowBlend#best()}
+ * when the JVM was started with --add-modules jdk.incubator.vector.
+ */
+public final class VectorRowBlend implements RowBlend {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /**
+     * One byte per float lane, so a widened byte vector fills exactly one float vector. Null when
+     * that shape is narrower than the smallest byte vector (128-bit floats); widen stays scalar.
+     */
+    private static final VectorSpecies<Byte> BYTES = SPECIES.vectorBitSize() / 4 < 64 ? null
+            : VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 4));
+
+    @Override
+    public void blend(float[][] rows, float[] weights, int taps, float[] out, int len) {
+        FloatVector[] w = new FloatVector[taps];
+        for (int k = 0; k < taps; k++) w[k] = FloatVector.broadcast(SPECIES, weights[k]);
+
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector acc = FloatVector.fromArray(SPECIES, rows[0], i).mul(w[0]);
+            for (int k = 1; k < taps; k++) {
+                acc = FloatVector.fromArray(SPECIES, rows[k], i).fma(w[k], acc);
+            }
+            acc.intoArray(out, i);
+        }
+        for (; i < len; i++) {
+            float s = weights[0] * rows[0][i];
+            for (int k = 1; k < taps; k++) s += weights[k] * rows[k][i];
+            out[i] = s;
+        }
+    }
+
+    @Override
+    public void gather(float[] src, int[][] index, float[][] weights, int taps, float[] out, int len) {
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector acc = FloatVector.fromArray(SPECIES, src, 0, index[0], i)
+                    .mul(FloatVector.fromArray(SPECIES, weights[0], i));
+            for (int k = 1; k < taps; k++) {
+                acc = FloatVector.fromArray(SPECIES, src, 0, index[k], i)
+                        .fma(FloatVector.fromArray(SPECIES, weights[k], i), acc);
+            }
+            acc.intoArray(out, i);
+        }
+        for (; i < len; i++) {
+            float s = weights[0][i] * src[index[0][i]];
+            for (int k = 1; k < taps; k++) s += weights[k][i] * src[index[k][i]];
+            out[i] = s;
+        }
+    }
+
+    @Override
+    public void widen(byte[] src, int off, float[] out, int len) {
+        int upper = BYTES == null ? 0 : SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            IntVector lanes = (IntVector) ByteVector.fromArray(BYTES, src, off + i)
+                    .convertShape(VectorOperators.B2I, INTS, 0);
+            ((FloatVector) lanes.and(0xFF).convertShape(VectorOperators.I2F, SPECIES, 0)).intoArray(out, i);
+        }
+        for (; i < len; i++) out[i] = src[off + i] & 0xFF;
+    }
+}
@@ -1,19 +1,122 @@
+import ro.ase.dad.rmi.BandRequest;
+import ro.ase.dad.rmi.PayloadCodec;
+import ro.ase.dad.rmi.RowChunk;
+import ro.ase.dad.rmi.ZoomResult;
 import ro.ase.dad.rmi.ZoomService;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ZoomServiceImpl extends UnicastRemoteObject implements ZoomService {
 
+    private static final long serialVersionUID = 1L;
+
+    private static int envInt(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try { return Integer.parseInt(v.trim()); } catch (Exception e) { return def; }
+    }
+
+    // One pool for all RMI calls: concurrent zooms share these threads instead of each adding its own.
+    private static final int ZOOM_PARALLELISM = envInt("ZOOM_PARALLELISM", Runtime.getRuntime().availableProcessors());
+    private static final long ZOOM_PARALLEL_MIN_BYTES = envInt("ZOOM_PARALLEL_MIN_BYTES", 1 << 20);
+    private static final ForkJoinPool ZOOM_POOL = new ForkJoinPool(Math.max(1, ZOOM_PARALLELISM));
+
+    // Streaming sessions; abandoned ones (c03 gone mid-job) are dropped after STREAM_IDLE_MS.
+    private static final long STREAM_IDLE_MS = envInt("STREAM_IDLE_MS", 300_000);
+    private final Map<Long, StreamSession> streams = new ConcurrentHashMap<>();
+    private final AtomicLong streamSeq = new AtomicLong();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stream-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
     protected ZoomServiceImpl() throws RemoteException {
         super(Integer.parseInt(System.getenv().getOrDefault("RMI_OBJ_PORT", "1109")));
+        sweeper.scheduleWithFixedDelay(this::sweepStreams, STREAM_IDLE_MS, STREAM_IDLE_MS, TimeUnit.MILLISECONDS);
     }
 
     @Override
-    public byte[] zoomBmp(byte[] bmpBytes, int percent, boolean zoomIn) throws RemoteException {
+    public ZoomResult zoomBand(BandRequest band) throws RemoteException {
+        long startedAt = System.currentTimeMillis();
         try {
-            return BmpUtils.zoomNearest(bmpBytes, percent, zoomIn);
+            // the band's source rows, addressed by their row in the whole image
+            BmpView src = BmpView.rows(PayloadCodec.decode(band.encoding, band.payload),
+                    band.width, band.height, band.bpp, band.srcY0);
+            double factor = BmpUtils.factor(band.percent, band.zoomIn);
+            int dstW = BmpUtils.scaled(src.width, factor);
+            int dstH = BmpUtils.scaled(src.absHeight, factor);
+            byte[] rows = BmpUtils.zoomRows(src, factor, dstW, dstH, band.dstY0, band.dstY1,
+                    ResampleMode.parse(band.mode), ZOOM_POOL, ZOOM_PARALLEL_MIN_BYTES);
+            return new ZoomResult(PayloadCodec.encode(band.encoding, rows), dstW, band.dstY1 - band.dstY0,
+                    startedAt, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            // bad input reaches c03 as is (not as a ServerException), so it rejects the job
+            // instead of draining this worker and retrying the band elsewhere
+            throw new IllegalArgumentException((band.jobId == null ? "" : "Job " + band.jobId + ": ") + e.getMessage(), e);
         } catch (Exception e) {
-            throw new RemoteException("Zoom failed: " + e.getMessage(), e);
+            throw new RemoteException("Zoom failed" + (band.jobId == null ? "" : " for job " + band.jobId) + ": "
+                    + e.getMessage(), e);
         }
     }
+
+    @Override
+    public long[] openStream(int width, int height, int bpp, int srcY0, int dstY0, int dstY1,
+                             int percent, boolean zoomIn, String encoding, int compressMinBytes) throws RemoteException {
+        try {
+            StreamSession session = new StreamSession(width, height, bpp, srcY0, dstY0, dstY1, percent, zoomIn,
+                    encoding, compressMinBytes);
+            long id = streamSeq.incrementAndGet();
+            streams.put(id, session);
+            return new long[]{id, session.dstW, dstY1 - dstY0};
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RemoteException("Open stream failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public RowChunk pushRows(long sessionId, long seq, RowChunk rows) throws RemoteException {
+        StreamSession session = streams.get(sessionId);
+        if (session == null) throw new RemoteException("Unknown stream session " + sessionId);
+        try {
+            // decoded and encoded outside the session's lock, so chunks in flight do that in parallel
+            byte[] out = session.push(seq, rows.decode(), STREAM_IDLE_MS);
+            return RowChunk.encode(out, session.encoding, session.compressMinBytes);
+        } catch (IllegalArgumentException e) {
+            closeStream(sessionId);
+            throw e;
+        } catch (Exception e) {
+            closeStream(sessionId);
+            throw new RemoteException("Stream zoom failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void closeStream(long sessionId) {
+        StreamSession session = streams.remove(sessionId);
+        if (session != null) session.close();
+    }
+
+    private void sweepStreams() {
+        long cutoff = System.currentTimeMillis() - STREAM_IDLE_MS;
+        streams.entrySet().removeIf(e -> {
+            if (e.getValue().lastUsed >= cutoff) return false;
+            e.getValue().close();
+            return true;
+        });
+    }
+
+    @Override
+    public void ping() {
+        // liveness probe used by the c03 stub cache
+    }
 }
\ No newline at end of file
@@ -11,4 +11,5 @@ sleep 1
 : "${RMI_HOSTNAME:=c04}"
 
 echo "[C04] Starting RMI server..."
-exec java -Djava.net.preferIPv4Stack=true -cp /app/classes ServerMain
+# jdk.incubator.vector: SIMD resampling (BmpUtils falls back to scalar code without it)
+exec java --add-modules jdk.incubator.vector -Djava.net.preferIPv4Stack=true -cp /app/classes ServerMain
@@ -0,0 +1,55 @@
+package ro.ase.dad.rmi;
+
+import java.io.Serializable;
+
+/**
+ * One band of a zoom job for {@link ZoomService#zoomBand}: destination rows [dstY0, dstY1) of the
+ * zoomed image, and the source rows they read. New band parameters become fields here rather than
+ * new ZoomService methods.
+ *
+ * The payload holds source rows [srcY0, srcY0 + n) of the whole width x height image, header-less
+ * and in the image's file order, encoded with {@code encoding} (see PayloadCodec; null for raw
+ * bytes). The worker zooms with the geometry of the whole image, so a band reads the same source
+ * rows and filter taps as an unsplit zoom would and neighbouring bands join without seams. The
+ * payload therefore includes the filter's halo: the rows just outside the band that its edge rows
+ * also read.
+ */
+public final class BandRequest implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    public final byte[] payload;
+    public final String encoding;
+    public final int width;     // of the whole source image
+    public final int height;    // of the whole source image, signed as in the BMP header (< 0: top-down)
+    public final int bpp;       // 24 or 32
+    public final int srcY0;     // first source row in the payload, counted from the top
+    public final int dstY0;     // destination rows [dstY0, dstY1) to produce, counted from the top
+    public final int dstY1;
+    public final int percent;
+    public final boolean zoomIn;
+    public final String mode;   // nearest (default when null), bilinear, bicubic or area
+    public final String jobId;  // names the job in the worker's errors; may be null
+
+    public BandRequest(byte[] payload, String encoding, int width, int height, int bpp, int srcY0,
+                       int dstY0, int dstY1, int percent, boolean zoomIn, String mode, String jobId) {
+        this.payload = payload;
+        this.encoding = encoding;
+        this.width = width;
+        this.height = height;
+        this.bpp = bpp;
+        this.srcY0 = srcY0;
+        this.dstY0 = dstY0;
+        this.dstY1 = dstY1;
+        this.percent = percent;
+        this.zoomIn = zoomIn;
+        this.mode = mode;
+        this.jobId = jobId;
+    }
+
+    /** The same band with its payload replaced, e.g. by a compressed copy. */
+    public BandRequest withPayload(byte[] payload, String encoding) {
+        return new BandRequest(payload, encoding, width, height, bpp, srcY0, dstY0, dstY1,
+                percent, zoomIn, mode, jobId);
+    }
+}
@@ -1,152 +1,249 @@
-import java.nio.ByteBuffer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class BmpUtils {
 
-    public static class Bmp {
-        public byte[] header;      
-        public int dataOffset;     // bfOffBits
-        public int width;
-        public int height;         // pozitiv => bottom-up, negativ => top-down
-        public int absHeight;
-        public int bpp;            // 24 sau 32
-        public int compression;    // 0 = BI_RGB
-        public int rowStride;      // bytes per row incl. padding
-        public boolean topDown;    // height < 0
+    // 4-byte access into byte[] for 32 bpp pixels (one load/store per pixel instead of 4)
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
 
-        public byte[] pixels;      
-    }
-
-    public static Bmp parse(byte[] bmpBytes) {
-        if (bmpBytes == null || bmpBytes.length < 54) {
-            throw new IllegalArgumentException("Invalid BMP: too small");
-        }
-        // Signature "BM"
-        if (bmpBytes[0] != 'B' || bmpBytes[1] != 'M') {
-            throw new IllegalArgumentException("Invalid BMP: missing BM signature");
-        }
-
-        ByteBuffer bb = ByteBuffer.wrap(bmpBytes).order(ByteOrder.LITTLE_ENDIAN);
+    // target output size of one row-range task when zooming in parallel
+    private static final int TASK_BYTES = 256 * 1024;
 
-        int fileSize = bb.getInt(2);
-        int dataOffset = bb.getInt(10);
+    public static byte[] zoomNearest(byte[] bmpBytes, int percent, boolean zoomIn) {
+        return zoom(bmpBytes, percent, zoomIn, ResampleMode.NEAREST, null, Long.MAX_VALUE);
+    }
 
-        int dibSize = bb.getInt(14);
-        if (dibSize < 40) {
-            throw new IllegalArgumentException("Unsupported DIB header size: " + dibSize);
-        }
+    /**
+     * Zooms with the given resampling mode. When the output is at least {@code parallelMinBytes}
+     * the destination rows are split into ranges zoomed on {@code pool}.
+     */
+    public static byte[] zoom(byte[] bmpBytes, int percent, boolean zoomIn, ResampleMode mode,
+                              ForkJoinPool pool, long parallelMinBytes) {
+        double factor = factor(percent, zoomIn);
 
-        int width = bb.getInt(18);
-        int height = bb.getInt(22);
-        short planes = bb.getShort(26);
-        short bpp = bb.getShort(28);
-        int compression = bb.getInt(30);
+        // no copy of the input: rows are read in place, output is written directly into the result file
+        BmpView src = BmpView.of(bmpBytes);
 
-        if (planes != 1) throw new IllegalArgumentException("Invalid BMP planes: " + planes);
-        if (!(bpp == 24 || bpp == 32)) throw new IllegalArgumentException("Unsupported BMP bpp: " + bpp);
-        if (compression != 0) throw new IllegalArgumentException("Unsupported BMP compression: " + compression);
+        int dstW = scaled(src.width, factor);
+        int dstH = scaled(src.absHeight, factor);
 
-        boolean topDown = height < 0;
-        int absHeight = Math.abs(height);
+        byte[] out = src.newFile(dstW, dstH, src.topDown); // keep same orientation as source
+        zoomInto(src, factor, dstW, dstH, 0, dstH, out, src.dataOffset, mode, pool, parallelMinBytes);
+        return out;
+    }
 
-        int bytesPerPixel = bpp / 8;
-        int rowNoPad = width * bytesPerPixel;
-        int rowStride = ((rowNoPad + 3) / 4) * 4;
+    /**
+     * Like {@link #zoom}, but produces only destination rows [dstY0, dstY1) of the zoomed image and
+     * returns their pixel array without a BMP header: rows of the destination row stride, in the
+     * source's row order (bottom-up sources give the bottom row first). {@code dstW} and {@code dstH}
+     * are {@link #scaled} from the whole source image. {@code src} may hold only some of the source
+     * rows ({@link BmpView#rows}) but must hold every row those destination rows read.
+     */
+    public static byte[] zoomRows(BmpView src, double factor, int dstW, int dstH, int dstY0, int dstY1,
+                                  ResampleMode mode, ForkJoinPool pool, long parallelMinBytes) {
+        if (dstY0 < 0 || dstY1 <= dstY0 || dstY1 > dstH) {
+            throw new IllegalArgumentException("Invalid destination rows " + dstY0 + ".." + dstY1 + " of " + dstH);
+        }
+        long size = (long) BmpView.rowStride(dstW, src.bpp) * (dstY1 - dstY0);
+        if (size > BmpView.MAX_ARRAY_BYTES) throw new IllegalArgumentException("Zoomed band too large: " + size + " bytes");
+        byte[] out = new byte[(int) size];
+        zoomInto(src, factor, dstW, dstH, dstY0, dstY1, out, 0, mode, pool, parallelMinBytes);
+        return out;
+    }
 
-        if (dataOffset <= 0 || dataOffset >= bmpBytes.length) {
-            throw new IllegalArgumentException("Invalid BMP data offset: " + dataOffset);
+    /**
+     * Writes destination rows [dstY0, dstY1) into {@code out}, whose pixel array starts at
+     * {@code outBase} and holds just those rows.
+     */
+    private static void zoomInto(BmpView src, double factor, int dstW, int dstH, int dstY0, int dstY1,
+                                 byte[] out, int outBase, ResampleMode mode, ForkJoinPool pool, long parallelMinBytes) {
+        RowKernel kernel;
+        int firstSrc, lastSrc;
+        if (mode == ResampleMode.NEAREST) {
+            int[] colMap = integerRatio(src, factor, dstW) ? null : columnMap(src.width, dstW, factor, src.bpp / 8);
+            kernel = (y0, y1) -> nearestRows(src, out, outBase, factor, dstW, dstY0, dstY1, colMap, y0, y1);
+            firstSrc = sourceIndex(dstY0, factor, src.absHeight);
+            lastSrc = sourceIndex(dstY1 - 1, factor, src.absHeight);
+        } else {
+            Resampler r = new Resampler(src, out, outBase, dstY0, dstY1, mode, factor, dstW, dstH);
+            kernel = r::rows;
+            firstSrc = r.firstSourceRow(dstY0, dstY1);
+            lastSrc = r.lastSourceRow(dstY0, dstY1);
         }
-        int expectedPixelsLen = rowStride * absHeight;
-        if (dataOffset + expectedPixelsLen > bmpBytes.length) {
-            throw new IllegalArgumentException("Invalid BMP: pixel data out of range");
+        if (firstSrc < src.firstRow || lastSrc >= src.firstRow + src.rowCount) {
+            throw new IllegalArgumentException("Rows " + dstY0 + ".." + dstY1 + " need source rows " + firstSrc
+                    + ".." + (lastSrc + 1) + ", got " + src.firstRow + ".." + (src.firstRow + src.rowCount));
         }
 
-        Bmp bmp = new Bmp();
-        bmp.dataOffset = dataOffset;
-        bmp.width = width;
-        bmp.height = height;
-        bmp.absHeight = absHeight;
-        bmp.topDown = topDown;
-        bmp.bpp = bpp;
-        bmp.compression = compression;
-        bmp.rowStride = rowStride;
+        int rows = dstY1 - dstY0;
+        if (pool == null || pool.getParallelism() < 2 || out.length < parallelMinBytes || rows < 2) {
+            kernel.rows(dstY0, dstY1);
+        } else {
+            int dstRowStride = BmpView.rowStride(dstW, src.bpp);
+            int grain = Math.max(1, TASK_BYTES / dstRowStride);
+            // at least a few ranges per pool thread so work stealing can balance them
+            grain = Math.min(grain, Math.max(1, rows / (4 * pool.getParallelism())));
+            pool.invoke(new RowRange(kernel, dstY0, dstY1, grain));
+        }
+    }
 
-        // header = everything before pixel data
-        bmp.header = new byte[dataOffset];
-        System.arraycopy(bmpBytes, 0, bmp.header, 0, dataOffset);
+    public static double factor(int percent, boolean zoomIn) {
+        if (percent <= 0) throw new IllegalArgumentException("percent must be > 0");
+        double factor = zoomIn ? (1.0 + percent / 100.0) : (1.0 - percent / 100.0);
+        return factor <= 0.05 ? 0.05 : factor; // safety
+    }
 
-        bmp.pixels = new byte[expectedPixelsLen];
-        System.arraycopy(bmpBytes, dataOffset, bmp.pixels, 0, expectedPixelsLen);
+    /** IllegalArgumentException when the zoomed length does not fit an int. */
+    public static int scaled(int len, double factor) {
+        long n = Math.round(len * factor);
+        if (n > Integer.MAX_VALUE) throw new IllegalArgumentException("Zoomed size too large: " + len + " x " + factor);
+        return (int) Math.max(1, n);
+    }
 
-        return bmp;
+    /** Produces destination rows [y0, y1); ranges are disjoint so they can run concurrently. */
+    interface RowKernel {
+        void rows(int y0, int y1);
     }
 
-    public static byte[] build(Bmp bmp, int newWidth, int newHeightAbs, boolean newTopDown, byte[] newPixels, int newRowStride) {
-        // Clone header then patch needed fields: file size, width, height, image size
-        byte[] header = bmp.header.clone();
-        ByteBuffer hb = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+    private static final class RowRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        int newHeightSigned = newTopDown ? -newHeightAbs : newHeightAbs;
-        int newImageSize = newRowStride * newHeightAbs;
-        int newFileSize = header.length + newImageSize;
+        private final RowKernel kernel;
+        private final int y0, y1, grain;
 
-        hb.putInt(2, newFileSize);         // bfSize
-        hb.putInt(18, newWidth);           // biWidth
-        hb.putInt(22, newHeightSigned);    // biHeight
-        hb.putInt(34, newImageSize);       
+        RowRange(RowKernel kernel, int y0, int y1, int grain) {
+            this.kernel = kernel;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.grain = grain;
+        }
 
-        byte[] out = new byte[newFileSize];
-        System.arraycopy(header, 0, out, 0, header.length);
-        System.arraycopy(newPixels, 0, out, header.length, newPixels.length);
-        return out;
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= grain) {
+                kernel.rows(y0, y1);
+                return;
+            }
+            int mid = (y0 + y1) >>> 1;
+            invokeAll(new RowRange(kernel, y0, mid, grain), new RowRange(kernel, mid, y1, grain));
+        }
     }
 
-    public static byte[] zoomNearest(byte[] bmpBytes, int percent, boolean zoomIn) {
-        if (percent <= 0) throw new IllegalArgumentException("percent must be > 0");
-
-        Bmp src = parse(bmpBytes);
-
-        double factor = zoomIn ? (1.0 + percent / 100.0) : (1.0 - percent / 100.0);
-        if (factor <= 0.05) factor = 0.05; // safety
+    /** Integer zoom-in (200%, 300%, ...): every source pixel is repeated k times, no lookups needed. */
+    static boolean integerRatio(BmpView src, double factor, int dstW) {
+        return integerRatio(src.width, factor, dstW);
+    }
 
-        int dstW = Math.max(1, (int) Math.round(src.width * factor));
-        int dstH = Math.max(1, (int) Math.round(src.absHeight * factor));
+    static boolean integerRatio(int srcW, double factor, int dstW) {
+        int k = (int) factor;
+        return k >= 2 && k == factor && dstW == srcW * k;
+    }
 
-        int bpp = src.bpp;
-        int bytesPerPixel = bpp / 8;
+    /**
+     * Source row or column for a destination row or column. Rows and the column map use the
+     * same rounding, so every path of the kernel produces identical pixels.
+     */
+    static int sourceIndex(int dst, double factor, int srcLen) {
+        int s = (int) Math.floor(dst / factor);
+        return s >= srcLen ? srcLen - 1 : s;
+    }
 
-        int dstRowNoPad = dstW * bytesPerPixel;
-        int dstRowStride = ((dstRowNoPad + 3) / 4) * 4;
+    /** Byte offset inside a source row of the pixel each destination column reads. */
+    static int[] columnMap(int srcW, int dstW, double factor, int bytesPerPixel) {
+        int[] map = new int[dstW];
+        for (int x = 0; x < dstW; x++) {
+            map[x] = sourceIndex(x, factor, srcW) * bytesPerPixel;
+        }
+        return map;
+    }
 
-        byte[] dstPixels = new byte[dstRowStride * dstH];
+    /**
+     * Writes destination rows [y0, y1) of a nearest-neighbour zoom into {@code out}, whose pixel
+     * array starts at {@code outBase} and holds destination rows [outY0, outY1).
+     * {@code colMap} is null for integer ratios.
+     */
+    static void nearestRows(BmpView src, byte[] out, int outBase, double factor, int dstW, int outY0, int outY1,
+                            int[] colMap, int y0, int y1) {
+        int bytesPerPixel = src.bpp / 8;
+        int dstRowStride = BmpView.rowStride(dstW, src.bpp);
+        int dstRowBytes = dstW * bytesPerPixel;
+        byte[] in = src.bytes;
+
+        int k = (int) factor;
+
+        int prevSy = -1;
+        int prevDst = -1;
+        for (int y = y0; y < y1; y++) {
+            int sy = sourceIndex(y, factor, src.absHeight);
+            int dstRowBase = src.outRowOffset(outBase, y - outY0, outY1 - outY0, dstRowStride);
+
+            // consecutive destination rows that read the same source row are identical
+            if (sy == prevSy) {
+                System.arraycopy(out, prevDst, out, dstRowBase, dstRowBytes);
+                continue;
+            }
 
-        // helper: map dst(x,y) -> src(sx,sy)
-        for (int y = 0; y < dstH; y++) {
-            int sy = (int) Math.floor(y / factor);
-            if (sy >= src.absHeight) sy = src.absHeight - 1;
+            nearestRow(in, src.rowOffset(sy), out, dstRowBase, bytesPerPixel, src.width, colMap, k);
+            // padding is already 0 (default) => ok
 
-            // BMP bottom-up means row0 in file is bottom row
-            int srcRowIndex = src.topDown ? sy : (src.absHeight - 1 - sy);
-            int srcRowBase = srcRowIndex * src.rowStride;
+            prevSy = sy;
+            prevDst = dstRowBase;
+        }
+    }
 
-            int dstRowIndex = src.topDown ? y : (dstH - 1 - y); // keep same orientation as source
-            int dstRowBase = dstRowIndex * dstRowStride;
+    /** One destination row from one source row; {@code colMap == null} means integer ratio {@code k}. */
+    static void nearestRow(byte[] in, int srcRowBase, byte[] out, int dstRowBase,
+                           int bytesPerPixel, int srcW, int[] colMap, int k) {
+        if (colMap == null) {
+            if (bytesPerPixel == 4) repeatRow32(in, srcRowBase, out, dstRowBase, srcW, k);
+            else repeatRow24(in, srcRowBase, out, dstRowBase, srcW, k);
+        } else {
+            if (bytesPerPixel == 4) mapRow32(in, srcRowBase, out, dstRowBase, colMap);
+            else mapRow24(in, srcRowBase, out, dstRowBase, colMap);
+        }
+    }
 
-            for (int x = 0; x < dstW; x++) {
-                int sx = (int) Math.floor(x / factor);
-                if (sx >= src.width) sx = src.width - 1;
+    private static void mapRow24(byte[] in, int srcRowBase, byte[] out, int dstRowBase, int[] colMap) {
+        int d = dstRowBase;
+        for (int x = 0; x < colMap.length; x++, d += 3) {
+            int s = srcRowBase + colMap[x];
+            out[d] = in[s];
+            out[d + 1] = in[s + 1];
+            out[d + 2] = in[s + 2];
+        }
+    }
 
-                int srcPix = srcRowBase + sx * bytesPerPixel;
-                int dstPix = dstRowBase + x * bytesPerPixel;
+    private static void mapRow32(byte[] in, int srcRowBase, byte[] out, int dstRowBase, int[] colMap) {
+        int d = dstRowBase;
+        for (int x = 0; x < colMap.length; x++, d += 4) {
+            INT.set(out, d, (int) INT.get(in, srcRowBase + colMap[x]));
+        }
+    }
 
-                // copy B,G,R,(A)
-                for (int k = 0; k < bytesPerPixel; k++) {
-                    dstPixels[dstPix + k] = src.pixels[srcPix + k];
-                }
+    private static void repeatRow24(byte[] in, int srcRowBase, byte[] out, int dstRowBase, int srcW, int k) {
+        int s = srcRowBase;
+        int d = dstRowBase;
+        for (int x = 0; x < srcW; x++, s += 3) {
+            byte b = in[s], g = in[s + 1], r = in[s + 2];
+            for (int i = 0; i < k; i++, d += 3) {
+                out[d] = b;
+                out[d + 1] = g;
+                out[d + 2] = r;
             }
-            // padding is already 0 (default) => ok
         }
+    }
 
-        return build(src, dstW, dstH, src.topDown, dstPixels, dstRowStride);
+    private static void repeatRow32(byte[] in, int srcRowBase, byte[] out, int dstRowBase, int srcW, int k) {
+        int s = srcRowBase;
+        int d = dstRowBase;
+        for (int x = 0; x < srcW; x++, s += 4) {
+            int px = (int) INT.get(in, s);
+            for (int i = 0; i < k; i++, d += 4) {
+                INT.set(out, d, px);
+            }
+        }
     }
 }
@@ -0,0 +1,118 @@
+package ro.ase.dad.rmi;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Payload encodings for BMP bytes on the wire (JMS body, RMI arguments and results).
+ *
+ * "deflate" frames are a 4-byte big-endian raw length followed by a raw Deflate stream
+ * (no zlib header) at BEST_SPEED. Knowing the raw length lets the receiver inflate straight
+ * into an exactly sized array. Uncompressed BMP rows usually shrink 3-10x at this level.
+ *
+ * That length comes off the wire, so it is checked before anything is allocated: it may not
+ * exceed PAYLOAD_MAX_BYTES (default 512 MiB, above c01's 200 MB upload limit and a zoomed band
+ * of such an upload), nor what the frame could possibly inflate to.
+ */
+public final class PayloadCodec {
+
+    public static final String IDENTITY = "identity";
+    public static final String DEFLATE = "deflate";
+
+    private static final long MAX_RAW_BYTES = getlong("PAYLOAD_MAX_BYTES", 512L * 1024 * 1024);
+
+    // Deflate cannot do better than about 1032:1, whatever the input
+    private static final int MAX_RATIO = 1032;
+
+    private PayloadCodec() {
+    }
+
+    public static boolean isDeflate(String encoding) {
+        return DEFLATE.equalsIgnoreCase(encoding);
+    }
+
+    /**
+     * Deflates {@code raw} if it is at least {@code minBytes} long and compression saves at least
+     * an eighth of it; otherwise returns null and the caller sends the raw bytes.
+     */
+    public static byte[] deflateIfWorthIt(byte[] raw, int minBytes) {
+        if (raw.length < minBytes) return null;
+        byte[] framed = deflate(raw);
+        return framed.length <= raw.length - raw.length / 8 ? framed : null;
+    }
+
+    public static byte[] deflate(byte[] raw) {
+        Deflater d = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            d.setInput(raw);
+            d.finish();
+            byte[] out = new byte[4 + Math.max(64, raw.length / 4)];
+            ByteBuffer.wrap(out).putInt(0, raw.length);
+            int n = 4;
+            while (!d.finished()) {
+                if (n == out.length) out = Arrays.copyOf(out, out.length * 2);
+                n += d.deflate(out, n, out.length - n);
+            }
+            return Arrays.copyOf(out, n);
+        } finally {
+            d.end();
+        }
+    }
+
+    public static byte[] inflate(byte[] framed) {
+        if (framed.length < 4) throw new IllegalArgumentException("Deflate frame too short");
+        int rawLen = ByteBuffer.wrap(framed).getInt(0);
+        if (rawLen < 0) throw new IllegalArgumentException("Invalid deflate frame length " + rawLen);
+        if (rawLen > MAX_RAW_BYTES) {
+            throw new IllegalArgumentException("Deflate frame of " + rawLen + " bytes exceeds PAYLOAD_MAX_BYTES=" + MAX_RAW_BYTES);
+        }
+        if (rawLen > (long) MAX_RATIO * (framed.length - 4) + 64) {
+            throw new IllegalArgumentException("Invalid deflate frame: " + rawLen + " bytes from " + (framed.length - 4));
+        }
+
+        Inflater inf = new Inflater(true);
+        try {
+            inf.setInput(framed, 4, framed.length - 4);
+            byte[] out = new byte[rawLen];
+            int n = 0;
+            while (n < rawLen) {
+                int k = inf.inflate(out, n, rawLen - n);
+                if (k == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary())) break;
+                n += k;
+            }
+            if (n != rawLen) throw new IllegalArgumentException("Deflate frame truncated: " + n + "/" + rawLen);
+            return out;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt deflate frame: " + e.getMessage(), e);
+        } finally {
+            inf.end();
+        }
+    }
+
+    /** Encodes {@code raw} with {@code encoding} (null or "identity" leaves it as is). */
+    public static byte[] encode(String encoding, byte[] raw) {
+        if (encoding == null || IDENTITY.equalsIgnoreCase(encoding)) return raw;
+        if (isDeflate(encoding)) return deflate(raw);
+        throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+    }
+
+    /** Decodes a payload sent with {@code encoding} (null or "identity" means raw bytes). */
+    public static byte[] decode(String encoding, byte[] payload) {
+        if (encoding == null || IDENTITY.equalsIgnoreCase(encoding)) return payload;
+        if (isDeflate(encoding)) return inflate(payload);
+        throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+    }
+
+    private static long getlong(String key, long def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Announces this worker to the c03 worker registry so c03 can schedule bands on it
+ * without a redeploy. Every interval it POSTs {"host","port","cores"} to REGISTRY_URL;
+ * c03 treats the announcement as a lease and drops the worker when it stops coming.
+ *
+ * c03 can run as several replicas behind one DNS name, so the registry host is resolved on
+ * every round and each address gets the announcement. On shutdown the worker deregisters
+ * with DELETE REGISTRY_URL/{host}/{port}. Both calls carry the shared WORKER_REGISTRY_TOKEN;
+ * c03 refuses them without it.
+ */
+public class RegistryAnnouncer implements Runnable {
+
+    private final URI registry;
+    private final String host;
+    private final int port;
+    private final long intervalMs;
+    private final String token;
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+
+    public RegistryAnnouncer(URI registry, String host, int port, long intervalMs, String token) {
+        this.registry = registry;
+        this.host = host;
+        this.port = port;
+        this.intervalMs = intervalMs;
+        this.token = token;
+    }
+
+    public void start() {
+        Thread t = new Thread(this, "registry-announcer");
+        t.setDaemon(true);
+        t.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> send("DELETE"), "registry-deregister"));
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            send("POST");
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void send(String method) {
+        String body = "{\"host\":\"" + host + "\",\"port\":" + port
+                + ",\"cores\":" + Runtime.getRuntime().availableProcessors() + "}";
+        InetAddress[] nodes;
+        try {
+            nodes = InetAddress.getAllByName(registry.getHost());
+        } catch (Exception e) {
+            System.out.println("Registry " + registry.getHost() + " not resolvable yet: " + e.getMessage());
+            return;
+        }
+        for (InetAddress node : nodes) {
+            try {
+                String path = registry.getPath() + (method.equals("DELETE") ? "/" + host + "/" + port : "");
+                URI target = new URI(registry.getScheme(), null, node.getHostAddress(), registry.getPort(),
+                        path, null, null);
+                HttpRequest.Builder req = HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(5))
+                        .header("X-Registry-Token", token);
+                if (method.equals("DELETE")) {
+                    req.DELETE();
+                } else {
+                    req.header("Content-Type", "application/json").POST(HttpRequest.BodyPublishers.ofString(body));
+                }
+                int code = http.send(req.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (code >= 300) System.out.println("Registry " + target + " answered HTTP " + code);
+            } catch (Exception e) {
+                System.out.println("Announce to " + node.getHostAddress() + " failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+public enum ResampleMode {
+    NEAREST,
+    BILINEAR,
+    BICUBIC,
+    AREA;       // box average, only meaningful when zooming out
+
+    public static ResampleMode parse(String s) {
+        if (s == null || s.isBlank()) return NEAREST;
+        try {
+            return valueOf(s.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown resampling mode: " + s);
+        }
+    }
+}
@@ -1,3 +1,5 @@
+import java.net.InetAddress;
+import java.net.URI;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 
@@ -18,6 +20,8 @@ public class ServerMain {
         int registryPort = envInt("RMI_REGISTRY_PORT", 1099);
         String name = env("RMI_NAME", "ZoomService");
         String hostname = env("RMI_HOSTNAME", "c05");
+        // "auto": this container's address, for workers started as scaled replicas
+        if (hostname.equals("auto")) hostname = InetAddress.getLocalHost().getHostAddress();
 
         System.setProperty("java.rmi.server.hostname", hostname);
 
@@ -27,6 +31,16 @@ public class ServerMain {
         System.out.println("RMI ready: " + hostname + ":" + registryPort + " name=" + name +
                 " servicePort=" + System.getenv().getOrDefault("RMI_SERVICE_PORT", "2001"));
 
+        String registryUrl = env("REGISTRY_URL", "");
+        String registryToken = env("WORKER_REGISTRY_TOKEN", "");
+        if (!registryUrl.isEmpty() && registryToken.isEmpty()) {
+            System.out.println("REGISTRY_URL set without WORKER_REGISTRY_TOKEN, not announcing");
+        } else if (!registryUrl.isEmpty()) {
+            new RegistryAnnouncer(URI.create(registryUrl), hostname, registryPort,
+                    envInt("ANNOUNCE_INTERVAL_MS", 5000), registryToken).start();
+            System.out.println("Announcing to " + registryUrl);
+        }
+
         Thread.currentThread().join();
     }
 }
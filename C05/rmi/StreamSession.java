@@ -0,0 +1,115 @@
+/**
+ * One streaming nearest-neighbour zoom of destination rows [dstY0, dstY1): source rows are pushed
+ * top to bottom in chunks, starting at srcY0, and every destination row whose source row has
+ * arrived is produced right away. Nearest-neighbour reads a single source row per destination row,
+ * so nothing from earlier chunks has to be kept.
+ *
+ * The session uses the geometry of the whole width x height image, like a zoomBand band, so the
+ * streamed bands of one image join without seams.
+ *
+ * Rows travel without a BMP header, top to bottom, each padded to its row stride. c03 keeps several
+ * chunks of a session in flight, so they can arrive out of order; each carries its sequence number
+ * and waits until the chunks before it have been zoomed.
+ */
+final class StreamSession {
+
+    final int srcW, srcH, bytesPerPixel, srcStride;
+    final int dstW, dstStride;
+    final int srcY0, dstY0, dstY1;
+    final String encoding;        // wire encoding of the session's chunks (see RowChunk.encode)
+    final int compressMinBytes;
+    private final double factor;
+    private final int[] colMap;   // null for integer ratios
+    private final int k;
+
+    private int received;         // source rows received so far, from srcY0
+    private int produced;         // destination rows returned so far, from dstY0
+    private long nextSeq;         // sequence number of the next chunk to zoom
+    private boolean closed;
+    volatile long lastUsed = System.currentTimeMillis();
+
+    StreamSession(int srcW, int srcH, int bpp, int srcY0, int dstY0, int dstY1, int percent, boolean zoomIn,
+                  String encoding, int compressMinBytes) {
+        if (srcW <= 0 || srcH <= 0) throw new IllegalArgumentException("Invalid size: " + srcW + "x" + srcH);
+        if (!(bpp == 24 || bpp == 32)) throw new IllegalArgumentException("Unsupported BMP bpp: " + bpp);
+
+        this.srcW = srcW;
+        this.srcH = srcH;
+        this.bytesPerPixel = bpp / 8;
+        this.srcStride = BmpView.rowStride(srcW, bpp);
+
+        this.factor = BmpUtils.factor(percent, zoomIn);
+        this.dstW = BmpUtils.scaled(srcW, factor);
+        this.dstStride = BmpView.rowStride(dstW, bpp);
+        int dstH = BmpUtils.scaled(srcH, factor);
+        if (dstY0 < 0 || dstY0 >= dstY1 || dstY1 > dstH) {
+            throw new IllegalArgumentException("Invalid rows " + dstY0 + ".." + dstY1 + " of " + dstH);
+        }
+        if (srcY0 < 0 || srcY0 > BmpUtils.sourceIndex(dstY0, factor, srcH)) {
+            throw new IllegalArgumentException("Rows " + dstY0 + ".." + dstY1 + " need source row "
+                    + BmpUtils.sourceIndex(dstY0, factor, srcH) + ", stream starts at " + srcY0);
+        }
+        this.srcY0 = srcY0;
+        this.dstY0 = dstY0;
+        this.dstY1 = dstY1;
+        this.encoding = encoding;
+        this.compressMinBytes = compressMinBytes;
+
+        this.colMap = BmpUtils.integerRatio(srcW, factor, dstW) ? null
+                : BmpUtils.columnMap(srcW, dstW, factor, bytesPerPixel);
+        this.k = (int) factor;
+    }
+
+    /**
+     * Accepts chunk {@code seq} (0, 1, 2, ...) of source rows and returns the destination rows it
+     * completes. Waits up to {@code waitMs} for the chunks before it.
+     */
+    synchronized byte[] push(long seq, byte[] rows, long waitMs) throws InterruptedException {
+        lastUsed = System.currentTimeMillis();
+        if (seq < nextSeq) throw new IllegalArgumentException("Chunk " + seq + " was already pushed");
+        long deadline = lastUsed + waitMs;
+        while (seq != nextSeq && !closed) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) throw new IllegalStateException("Chunk " + seq + " still waits for chunk " + nextSeq);
+            wait(left);
+        }
+        if (closed) throw new IllegalStateException("Stream is closed");
+        if (rows.length % srcStride != 0) {
+            throw new IllegalArgumentException("Chunk is not a whole number of rows: " + rows.length);
+        }
+        int first = srcY0 + received;
+        int n = rows.length / srcStride;
+        if (first + n > srcH) throw new IllegalArgumentException("Too many rows: " + (first + n) + " > " + srcH);
+        received += n;
+
+        int start = dstY0 + produced;
+        int end = start;
+        while (end < dstY1 && BmpUtils.sourceIndex(end, factor, srcH) < first + n) end++;
+
+        byte[] out = new byte[(end - start) * dstStride];
+        int prevSy = -1;
+        for (int y = start, d = 0; y < end; y++, d += dstStride) {
+            int sy = BmpUtils.sourceIndex(y, factor, srcH);
+            if (sy == prevSy) {
+                System.arraycopy(out, d - dstStride, out, d, dstStride);
+            } else {
+                BmpUtils.nearestRow(rows, (sy - first) * srcStride, out, d, bytesPerPixel, srcW, colMap, k);
+                prevSy = sy;
+            }
+        }
+        produced = end - dstY0;
+        nextSeq++;
+        notifyAll();
+        return out;
+    }
+
+    /** Ends the session; chunks still waiting for their turn fail. */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    synchronized boolean complete() {
+        return dstY0 + produced == dstY1;
+    }
+}
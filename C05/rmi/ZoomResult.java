@@ -0,0 +1,31 @@
+package ro.ase.dad.rmi;
+
+import java.io.Serializable;
+
+/**
+ * Result of {@link ZoomService#zoomBand}: only the zoomed pixel array, without a BMP header
+ * ({@code height} rows of the row stride for {@code width}: the band's destination rows
+ * [dstY0, dstY1) of the zoomed image, in the source's row order, encoded
+ * like the request), which the caller copies straight into an image it allocated itself. Also
+ * when the worker started and finished the band, in epoch milliseconds on the worker's clock;
+ * the caller's own send and receive times around the call tell the network and queueing share
+ * apart from the compute time.
+ */
+public final class ZoomResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public final byte[] rows;
+    public final int width;
+    public final int height;
+    public final long startedAt;
+    public final long finishedAt;
+
+    public ZoomResult(byte[] rows, int width, int height, long startedAt, long finishedAt) {
+        this.rows = rows;
+        this.width = width;
+        this.height = height;
+        this.startedAt = startedAt;
+        this.finishedAt = finishedAt;
+    }
+}
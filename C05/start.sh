@@ -10,4 +10,5 @@ if command -v snmpd >/dev/null 2>&1; then
   /usr/sbin/snmpd -f -Lo -C -c /etc/snmp/snmpd.conf &
 fi
 
-exec java -Djava.net.preferIPv4Stack=true -cp /app/classes ServerMain
+# jdk.incubator.vector: SIMD resampling (BmpUtils falls back to scalar code without it)
+exec java --add-modules jdk.incubator.vector -Djava.net.preferIPv4Stack=true -cp /app/classes ServerMain
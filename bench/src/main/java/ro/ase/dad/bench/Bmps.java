@@ -0,0 +1,45 @@
+package ro.ase.dad.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/** Synthetic BMP inputs for the benchmarks: uncompressed 24/32 bpp, either orientation. */
+public final class Bmps {
+
+    private Bmps() {
+    }
+
+    /** Parses a "WIDTHxHEIGHT" benchmark parameter. */
+    public static int[] dims(String size) {
+        String[] p = size.split("x");
+        return new int[]{Integer.parseInt(p[0]), Integer.parseInt(p[1])};
+    }
+
+    /** A BMP with seeded pseudo-random pixels, so every run sees the same bytes. */
+    public static byte[] create(int width, int height, int bpp, boolean topDown) {
+        int stride = ((width * (bpp / 8) + 3) / 4) * 4;
+        long pixelBytes = (long) stride * height;
+        if (54 + pixelBytes > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+
+        byte[] bmp = new byte[(int) (54 + pixelBytes)];
+        ByteBuffer bb = ByteBuffer.wrap(bmp).order(ByteOrder.LITTLE_ENDIAN);
+        bb.put(0, (byte) 'B').put(1, (byte) 'M');
+        bb.putInt(2, bmp.length);
+        bb.putInt(10, 54);
+        bb.putInt(14, 40);
+        bb.putInt(18, width);
+        bb.putInt(22, topDown ? -height : height);
+        bb.putShort(26, (short) 1);
+        bb.putShort(28, (short) bpp);
+        bb.putInt(34, (int) pixelBytes);
+
+        Random rnd = new Random(42);
+        byte[] row = new byte[stride];
+        for (int y = 0; y < height; y++) {
+            rnd.nextBytes(row);
+            System.arraycopy(row, 0, bmp, 54 + y * stride, stride);
+        }
+        return bmp;
+    }
+}
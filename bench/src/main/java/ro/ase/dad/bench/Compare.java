@@ -0,0 +1,99 @@
+package ro.ase.dad.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files (-rf json) and exits with status 1 when a benchmark got
+ * slower, or allocates more per operation (gc.alloc.rate.norm from -prof gc), by more than the
+ * threshold. Benchmarks present in only one file are listed but do not fail the run.
+ *
+ * Usage: Compare baseline.json current.json [thresholdPercent, default 10]
+ */
+public final class Compare {
+
+    private static final class Result {
+        String mode;
+        double score;
+        String unit;
+        double allocNorm = Double.NaN;
+    }
+
+    private Compare() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: Compare <baseline.json> <current.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) / 100.0 : 0.10;
+
+        Map<String, Result> base = read(new File(args[0]));
+        Map<String, Result> cur = read(new File(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> e : new TreeMap<>(cur).entrySet()) {
+            Result c = e.getValue();
+            Result b = base.get(e.getKey());
+            if (b == null) {
+                System.out.println("NEW   " + e.getKey());
+                continue;
+            }
+            // throughput modes: higher is better; time modes: lower is better
+            double change = "thrpt".equals(c.mode) ? (b.score - c.score) / b.score : (c.score - b.score) / b.score;
+            boolean slower = change > threshold;
+            boolean heavier = !Double.isNaN(b.allocNorm) && !Double.isNaN(c.allocNorm)
+                    && c.allocNorm > b.allocNorm * (1 + threshold) && c.allocNorm - b.allocNorm > 64;
+            if (slower || heavier) regressions++;
+
+            System.out.printf("%-5s %s: %.3f -> %.3f %s (%+.1f%%)%s%n",
+                    slower || heavier ? "FAIL" : "ok", e.getKey(), b.score, c.score, c.unit, change * 100,
+                    Double.isNaN(c.allocNorm) ? "" : String.format(", alloc %.0f -> %.0f B/op", b.allocNorm, c.allocNorm));
+        }
+        for (String k : base.keySet()) {
+            if (!cur.containsKey(k)) System.out.println("GONE  " + k);
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) above " + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(File f) throws Exception {
+        Map<String, Result> out = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(f)) {
+            Result r = new Result();
+            r.mode = run.path("mode").asText();
+            r.score = run.path("primaryMetric").path("score").asDouble();
+            r.unit = run.path("primaryMetric").path("scoreUnit").asText();
+
+            // JMH 1.37 names it "gc.alloc.rate.norm", older versions "·gc.alloc.rate.norm"
+            Iterator<Map.Entry<String, JsonNode>> it = run.path("secondaryMetrics").fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> m = it.next();
+                if (m.getKey().endsWith("gc.alloc.rate.norm")) r.allocNorm = m.getValue().path("score").asDouble();
+            }
+            out.put(key(run), r);
+        }
+        return out;
+    }
+
+    private static String key(JsonNode run) {
+        StringBuilder sb = new StringBuilder(run.path("benchmark").asText().replace("ro.ase.dad.bench.", ""));
+        sb.append(" [").append(run.path("mode").asText());
+        Iterator<Map.Entry<String, JsonNode>> it = run.path("params").fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> p = it.next();
+            sb.append(", ").append(p.getKey()).append('=').append(p.getValue().asText());
+        }
+        return sb.append(']').toString();
+    }
+}
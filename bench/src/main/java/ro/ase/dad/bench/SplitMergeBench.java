@@ -0,0 +1,82 @@
+package ro.ase.dad.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.ase.dad.c03.BmpSplitMerge;
+import ro.ase.dad.c03.BmpView;
+import ro.ase.dad.rmi.ZoomResult;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * c03's split into two bands and merge back, over bpp, orientation and image size: from band BMPs
+ * (mergeVertical) and from the header-less rows that zoomBand returns (assembleBands).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SplitMergeBench {
+
+    @Param({"24", "32"})
+    public int bpp;
+
+    @Param({"false", "true"})
+    public boolean topDown;
+
+    // 8192x8192 at 24 bpp is the ~200 MB upload case
+    @Param({"256x256", "2048x1536", "8192x8192"})
+    public String size;
+
+    private byte[] bmp;
+    private byte[] top;
+    private byte[] bottom;
+    private BmpView view;
+    private ZoomResult[] rows;
+
+    @Setup
+    public void setup() {
+        int[] d = Bmps.dims(size);
+        bmp = Bmps.create(d[0], d[1], bpp, topDown);
+        BmpSplitMerge.Split s = BmpSplitMerge.splitHalf(bmp);
+        top = s.topBmp;
+        bottom = s.bottomBmp;
+
+        view = BmpView.of(bmp);
+        rows = new ZoomResult[]{pixelRows(top), pixelRows(bottom)};
+    }
+
+    /** A band as zoomBand returns it at 100%: its pixel array and geometry, no header. */
+    private static ZoomResult pixelRows(byte[] band) {
+        BmpView v = BmpView.of(band);
+        byte[] px = new byte[(int) v.pixelBytes()];
+        v.copyRows(0, v.absHeight, px, 0);
+        return new ZoomResult(px, v.width, v.absHeight, 0, 0);
+    }
+
+    @Benchmark
+    public BmpSplitMerge.Split splitHalf() {
+        return BmpSplitMerge.splitHalf(bmp);
+    }
+
+    @Benchmark
+    public byte[] mergeVertical() {
+        return BmpSplitMerge.mergeVertical(top, bottom);
+    }
+
+    @Benchmark
+    public byte[] assembleBands() {
+        return BmpSplitMerge.assembleBands(view, rows);
+    }
+}
@@ -0,0 +1,69 @@
+package ro.ase.dad.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The workers' nearest-neighbour zoom. BmpUtils lives in the default package, which a named
+ * package cannot import, so it is called through a constant MethodHandle (inlined by the JIT).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class ZoomBench {
+
+    private static final MethodHandle ZOOM_NEAREST = lookupZoomNearest();
+
+    @Param({"24", "32"})
+    public int bpp;
+
+    @Param({"false", "true"})
+    public boolean topDown;
+
+    @Param({"256x256", "2048x1536", "8192x8192"})
+    public String size;
+
+    // percent with direction: negative zooms out, positive zooms in
+    @Param({"-50", "20", "100"})
+    public int zoom;
+
+    private byte[] bmp;
+
+    @Setup
+    public void setup() {
+        int[] d = Bmps.dims(size);
+        bmp = Bmps.create(d[0], d[1], bpp, topDown);
+    }
+
+    @Benchmark
+    public byte[] zoomNearest() throws Throwable {
+        return (byte[]) ZOOM_NEAREST.invokeExact(bmp, Math.abs(zoom), zoom > 0);
+    }
+
+    private static MethodHandle lookupZoomNearest() {
+        try {
+            Class<?> utils = Class.forName("BmpUtils");
+            return MethodHandles.publicLookup().findStatic(utils, "zoomNearest",
+                    MethodType.methodType(byte[].class, byte[].class, int.class, boolean.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
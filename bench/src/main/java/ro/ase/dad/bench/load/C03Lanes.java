@@ -0,0 +1,137 @@
+package ro.ase.dad.bench.load;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.RedeliveryPolicy;
+import ro.ase.dad.c03.JobDonePublisher;
+import ro.ase.dad.c03.JobProcessor;
+import ro.ase.dad.c03.JobTrace;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * c03 without TomEE: the two job MDBs' consumers, each session on its own thread, handing every
+ * message to the same {@link JobProcessor} lane the MDB uses. Like the resource adapter, each
+ * delivery runs in a transacted session that is rolled back when processing throws, with the
+ * MDBs' redelivery settings (MDB_MAX_REDELIVERIES, MDB_REDELIVERY_DELAY_MS).
+ */
+final class C03Lanes implements AutoCloseable {
+
+    private final Connection connection;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+
+    C03Lanes(String brokerUrl) throws Exception {
+        ActiveMQConnectionFactory cf = new ActiveMQConnectionFactory(brokerUrl);
+        RedeliveryPolicy redelivery = cf.getRedeliveryPolicy();
+        redelivery.setMaximumRedeliveries(getint("MDB_MAX_REDELIVERIES", 3));
+        redelivery.setInitialRedeliveryDelay(getint("MDB_REDELIVERY_DELAY_MS", 2000));
+        redelivery.setUseExponentialBackOff(true);
+        connection = cf.createConnection();
+        connection.start();
+
+        JobDonePublisher done = new DonePublisher(connection.createSession(false, Session.AUTO_ACKNOWLEDGE));
+        int prefetch = getint("MDB_PREFETCH", 1);
+        startLane("Consumer.c03.bmp.topic", getint("MDB_MAX_SESSIONS", 4), prefetch, JobProcessor.BATCH, done);
+        startLane("Consumer.c03.bmp.fast.topic", getint("MDB_FAST_SESSIONS", 2), prefetch, JobProcessor.FAST, done);
+    }
+
+    private void startLane(String queue, int sessions, int prefetch, JobProcessor lane, JobDonePublisher done)
+            throws Exception {
+        for (int i = 0; i < sessions; i++) {
+            Session s = connection.createSession(true, Session.SESSION_TRANSACTED);
+            MessageConsumer consumer = s.createConsumer(s.createQueue(queue + "?consumer.prefetchSize=" + prefetch));
+            Thread t = new Thread(() -> consume(s, consumer, lane, done), "c03-" + queue + "-" + i);
+            t.setDaemon(true);
+            t.start();
+            threads.add(t);
+        }
+    }
+
+    private void consume(Session s, MessageConsumer consumer, JobProcessor lane, JobDonePublisher done) {
+        while (running) {
+            try {
+                Message m = consumer.receive(500);
+                if (m == null) continue;
+                try {
+                    lane.process(JakartaMessages.wrap(m), done);
+                    s.commit();
+                } catch (RuntimeException e) {
+                    s.rollback();
+                }
+            } catch (Exception e) {
+                if (running) System.out.println("LOAD: c03 consumer error: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        running = false;
+        for (Thread t : threads) t.join(2000);
+        connection.close();
+    }
+
+    /** c03's done notifications, sent on the harness connection instead of TomEE's outbound factory. */
+    private static final class DonePublisher extends JobDonePublisher {
+        private final Session session;
+        private final MessageProducer producer;
+
+        DonePublisher(Session session) throws Exception {
+            this.session = session;
+            Queue q = session.createQueue(getenv("JMS_DONE_QUEUE", "job.done.queue"));
+            this.producer = session.createProducer(q);
+        }
+
+        @Override
+        public void publishJobDone(String jobId, long imageId, JobTrace trace) {
+            send(jobId, imageId, null, trace);
+        }
+
+        @Override
+        public void publishJobFailed(String jobId, String error, JobTrace trace) {
+            send(jobId, -1, error == null ? "failed" : error, trace);
+        }
+
+        // stores complete on the c06 client's threads; a session is single-threaded
+        private synchronized void send(String jobId, long imageId, String error, JobTrace trace) {
+            try {
+                Message msg = session.createMessage();
+                msg.setStringProperty("jobId", jobId);
+                if (error != null) {
+                    msg.setStringProperty("error", error);
+                } else {
+                    msg.setLongProperty("imageId", imageId);
+                }
+                if (trace != null) {
+                    trace.mark("doneSent");
+                    msg.setStringProperty("timeline", trace.toJson());
+                }
+                producer.send(msg);
+            } catch (Exception e) {
+                System.out.println("LOAD: done publish failed for " + jobId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String getenv(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ro.ase.dad.bench.load;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Presents an ActiveMQ 5 (javax.jms) message as a jakarta.jms one, so c03's
+ * {@code JobProcessor} can run on messages from the embedded broker exactly as it does on the ones
+ * TomEE's resource adapter delivers. Both APIs have the same methods; calls are forwarded by name
+ * and JMS exceptions are translated.
+ */
+final class JakartaMessages {
+
+    private JakartaMessages() {
+    }
+
+    static jakarta.jms.Message wrap(javax.jms.Message m) {
+        Class<?> type = m instanceof javax.jms.BytesMessage ? jakarta.jms.BytesMessage.class
+                : m instanceof javax.jms.TextMessage ? jakarta.jms.TextMessage.class
+                : jakarta.jms.Message.class;
+        return (jakarta.jms.Message) Proxy.newProxyInstance(JakartaMessages.class.getClassLoader(),
+                new Class<?>[]{type}, new Forwarder(m));
+    }
+
+    private static final class Forwarder implements InvocationHandler {
+        private final javax.jms.Message target;
+
+        Forwarder(javax.jms.Message target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return target.toString();
+                case "getBody":
+                    if (target instanceof javax.jms.BytesMessage && args[0] == byte[].class) return bytes();
+                    break;
+                default:
+                    break;
+            }
+            try {
+                Method m = target.getClass().getMethod(method.getName(), method.getParameterTypes());
+                return m.invoke(target, args);
+            } catch (NoSuchMethodException e) {
+                throw new UnsupportedOperationException(method.getName() + " is not forwarded to javax.jms");
+            } catch (InvocationTargetException e) {
+                throw translate(e.getCause());
+            }
+        }
+
+        private byte[] bytes() throws jakarta.jms.JMSException {
+            try {
+                javax.jms.BytesMessage b = (javax.jms.BytesMessage) target;
+                b.reset();
+                byte[] out = new byte[(int) b.getBodyLength()];
+                b.readBytes(out);
+                return out;
+            } catch (javax.jms.JMSException e) {
+                throw (jakarta.jms.JMSException) translate(e);
+            }
+        }
+
+        private static Throwable translate(Throwable t) {
+            if (!(t instanceof javax.jms.JMSException)) return t;
+            javax.jms.JMSException e = (javax.jms.JMSException) t;
+            jakarta.jms.JMSException out = new jakarta.jms.JMSException(e.getMessage(), e.getErrorCode());
+            out.initCause(e);
+            return out;
+        }
+    }
+}
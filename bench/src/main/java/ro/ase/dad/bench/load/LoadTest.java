@@ -0,0 +1,263 @@
+package ro.ase.dad.bench.load;
+
+import ro.ase.dad.bench.Bmps;
+import ro.ase.dad.c03.HttpToC06Client;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Offline load test of the whole pipeline: c01 → broker → c03 → workers → c06, all in this JVM
+ * ({@link Pipeline}), driven through c01's HTTP and WebSocket API by {@link Uploader}.
+ *
+ * Load is either closed-loop (--clients N, each submitting its next job when the last one
+ * finished) or open-loop (--rate R jobs/s, latency counted from the scheduled submit time, so a
+ * slow pipeline shows up as latency rather than as a lower send rate). Each job is drawn from
+ * the upload mix by weight. Only jobs submitted after the warmup are reported: jobs/s and
+ * end-to-end latency (upload start to the DONE update) per mix entry and overall.
+ *
+ * Options (defaults): --mix 512x512x24:6,2048x1536x24:3,4096x4096x32@bilinear:1
+ * --clients 4 --rate 0 --max-inflight 256 --warmup-s 10 --duration-s 60 --percent 20
+ * --zoom-out false --timeout-s 120 --ws 4 --c06-delay-ms 0 --log loadtest.log
+ *
+ * Mix entries are WIDTHxHEIGHTxBPP[@mode][:weight]. The services' own output goes to the log file.
+ */
+public final class LoadTest {
+
+    private static final class Upload {
+        final String label;
+        final byte[] bmp;
+        final String mode;
+        final int weight;
+        final List<Long> latencies = new ArrayList<>(); // guarded by this; DONE jobs only
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+
+        Upload(String label, byte[] bmp, String mode, int weight) {
+            this.label = label;
+            this.bmp = bmp;
+            this.mode = mode;
+            this.weight = weight;
+        }
+
+        void record(String status, long nanos) {
+            if ("DONE".equals(status)) {
+                synchronized (this) {
+                    latencies.add(nanos);
+                }
+            } else {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = options(args);
+        List<Upload> mix = mix(opts.getOrDefault("mix", "512x512x24:6,2048x1536x24:3,4096x4096x32@bilinear:1"));
+        int clients = Integer.parseInt(opts.getOrDefault("clients", "4"));
+        double rate = Double.parseDouble(opts.getOrDefault("rate", "0"));
+        int maxInflight = Integer.parseInt(opts.getOrDefault("max-inflight", "256"));
+        long warmupNs = TimeUnit.SECONDS.toNanos(Long.parseLong(opts.getOrDefault("warmup-s", "10")));
+        long durationNs = TimeUnit.SECONDS.toNanos(Long.parseLong(opts.getOrDefault("duration-s", "60")));
+        int percent = Integer.parseInt(opts.getOrDefault("percent", "20"));
+        boolean zoomIn = !Boolean.parseBoolean(opts.getOrDefault("zoom-out", "false"));
+        long timeoutMs = TimeUnit.SECONDS.toMillis(Long.parseLong(opts.getOrDefault("timeout-s", "120")));
+
+        // the services log every job on System.out: keep that out of the report
+        PrintStream report = System.out;
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        System.setOut(new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(opts.getOrDefault("log", "loadtest.log")), 1 << 16), false));
+
+        Pipeline pipeline = new Pipeline(Long.parseLong(opts.getOrDefault("c06-delay-ms", "0")));
+        Uploader uploader = new Uploader(pipeline.c01Port, Integer.parseInt(opts.getOrDefault("ws", "4")), timeoutMs);
+
+        report.println("Pipeline up. Mix:");
+        for (Upload u : mix) report.printf("  %-28s %8.1f MB  weight %d%n", u.label, u.bmp.length / 1e6, u.weight);
+        report.println(rate > 0 ? "Open loop, " + rate + " jobs/s, max " + maxInflight + " in flight"
+                : "Closed loop, " + clients + " clients");
+        report.printf("Warmup %d s, measuring %d s, %s %d%%%n", TimeUnit.NANOSECONDS.toSeconds(warmupNs),
+                TimeUnit.NANOSECONDS.toSeconds(durationNs), zoomIn ? "zoom in" : "zoom out", percent);
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNs;
+        long end = measureFrom + durationNs;
+
+        if (rate > 0) {
+            openLoop(uploader, mix, rate, maxInflight, start, measureFrom, end, timeoutMs, zoomIn, percent);
+        } else {
+            closedLoop(uploader, mix, clients, measureFrom, end, zoomIn, percent);
+        }
+
+        long done = print(report, mix, durationNs);
+        report.println("c06 stub: " + pipeline.c06().stored() + " stores, "
+                + Math.round(pipeline.c06().bytes() / 1e6) + " MB");
+        report.println("c03 -> c06: " + HttpToC06Client.stats());
+        report.println("c01 -> broker: " + get("http://localhost:" + pipeline.c01Port + "/api/stats/jms"));
+
+        System.out.flush();
+        pipeline.close();
+        System.exit(done > 0 ? 0 : 1);
+    }
+
+    private static void closedLoop(Uploader uploader, List<Upload> mix, int clients, long measureFrom, long end,
+                                   boolean zoomIn, int percent) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            Random rnd = new Random(i);
+            Thread t = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    Upload u = pick(mix, rnd);
+                    long t0 = System.nanoTime();
+                    String status;
+                    try {
+                        status = uploader.submit(u.bmp, u.label + ".bmp", zoomIn, percent, u.mode).join();
+                    } catch (Exception e) {
+                        status = "ERROR " + e.getMessage();
+                    }
+                    if (t0 >= measureFrom) u.record(status, System.nanoTime() - t0);
+                }
+            }, "load-client-" + i);
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t : threads) t.join();
+    }
+
+    private static void openLoop(Uploader uploader, List<Upload> mix, double rate, int maxInflight, long start,
+                                 long measureFrom, long end, long timeoutMs, boolean zoomIn, int percent)
+            throws InterruptedException {
+        Semaphore inflight = new Semaphore(maxInflight);
+        Random rnd = new Random(0);
+        long interval = (long) (1e9 / rate);
+        for (long i = 0; ; i++) {
+            long at = start + i * interval;
+            if (at >= end) break;
+            for (long now; (now = System.nanoTime()) < at; ) LockSupport.parkNanos(at - now);
+
+            Upload u = pick(mix, rnd);
+            if (!inflight.tryAcquire()) {
+                // the pipeline is this far behind: counted, not queued without bound
+                if (at >= measureFrom) u.dropped.incrementAndGet();
+                continue;
+            }
+            uploader.submit(u.bmp, u.label + ".bmp", zoomIn, percent, u.mode).whenComplete((status, err) -> {
+                if (at >= measureFrom) u.record(err != null ? "ERROR" : status, System.nanoTime() - at);
+                inflight.release();
+            });
+        }
+        if (!inflight.tryAcquire(maxInflight, timeoutMs + 10_000, TimeUnit.MILLISECONDS)) {
+            System.err.println("LOAD: jobs still in flight after the timeout");
+        }
+    }
+
+    private static Upload pick(List<Upload> mix, Random rnd) {
+        int total = 0;
+        for (Upload u : mix) total += u.weight;
+        int r = rnd.nextInt(total);
+        for (Upload u : mix) {
+            r -= u.weight;
+            if (r < 0) return u;
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    /** Prints the table and returns the number of jobs that finished DONE. */
+    private static long print(PrintStream out, List<Upload> mix, long durationNs) {
+        double seconds = durationNs / 1e9;
+        out.printf("%n%-28s %7s %7s %7s %8s %9s %9s %9s %9s%n",
+                "upload", "done", "failed", "dropped", "jobs/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        List<Long> all = new ArrayList<>();
+        long failed = 0;
+        long dropped = 0;
+        for (Upload u : mix) {
+            List<Long> l;
+            synchronized (u) {
+                l = new ArrayList<>(u.latencies);
+            }
+            all.addAll(l);
+            failed += u.failed.get();
+            dropped += u.dropped.get();
+            row(out, u.label, l, u.failed.get(), u.dropped.get(), seconds);
+        }
+        row(out, "all", all, failed, dropped, seconds);
+        return all.size();
+    }
+
+    private static void row(PrintStream out, String label, List<Long> latencies, long failed, long dropped,
+                            double seconds) {
+        long[] ns = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(ns);
+        out.printf("%-28s %7d %7d %7d %8.2f %9.1f %9.1f %9.1f %9.1f%n", label, ns.length, failed, dropped,
+                ns.length / seconds, ms(ns, 0.50), ms(ns, 0.95), ms(ns, 0.99), ms(ns, 1.0));
+    }
+
+    private static double ms(long[] sorted, double p) {
+        if (sorted.length == 0) return Double.NaN;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    private static List<Upload> mix(String spec) {
+        List<Upload> out = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            String e = entry.trim();
+            int weight = 1;
+            int colon = e.indexOf(':');
+            if (colon >= 0) {
+                weight = Integer.parseInt(e.substring(colon + 1));
+                e = e.substring(0, colon);
+            }
+            String mode = "nearest";
+            int at = e.indexOf('@');
+            if (at >= 0) {
+                mode = e.substring(at + 1);
+                e = e.substring(0, at);
+            }
+            String[] d = e.split("x");
+            if (d.length != 3) throw new IllegalArgumentException("Mix entry must be WIDTHxHEIGHTxBPP[@mode][:weight]: " + entry);
+            byte[] bmp = Bmps.create(Integer.parseInt(d[0]), Integer.parseInt(d[1]), Integer.parseInt(d[2]), false);
+            out.add(new Upload(e + "@" + mode, bmp, mode, weight));
+        }
+        return out;
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value, got: " + args[i]);
+            }
+            m.put(args[i].substring(2), args[++i]);
+        }
+        return m;
+    }
+
+    private static String get(String url) {
+        try {
+            return HttpClient.newHttpClient()
+                    .send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString())
+                    .body();
+        } catch (Exception e) {
+            return "unavailable (" + e.getMessage() + ")";
+        }
+    }
+}
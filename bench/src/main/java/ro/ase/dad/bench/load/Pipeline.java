@@ -0,0 +1,133 @@
+package ro.ase.dad.bench.load;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.DestinationInterceptor;
+import org.apache.activemq.broker.region.policy.IndividualDeadLetterStrategy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.broker.region.virtual.VirtualDestination;
+import org.apache.activemq.broker.region.virtual.VirtualDestinationInterceptor;
+import org.apache.activemq.broker.region.virtual.VirtualTopic;
+
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.rmi.Remote;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The whole job pipeline in one JVM, configured from the same environment variables as the
+ * services (scripts/loadtest.sh sets them for localhost):
+ * <ul>
+ *   <li>c02: an embedded ActiveMQ broker on JMS_BROKER_PORT with C02/activemq.xml's virtual
+ *   topics and queue policy (no persistence, no auth);</li>
+ *   <li>c04/c05: a ZoomServiceImpl with its own RMI registry for every local entry of RMI_WORKERS;</li>
+ *   <li>c06: {@link StubC06} on the port of C06_BASE_URL;</li>
+ *   <li>c03: {@link C03Lanes}, the MDB consumers running c03's JobProcessor;</li>
+ *   <li>c01: its real {@code Main}, routes and all, on PORT.</li>
+ * </ul>
+ */
+final class Pipeline implements AutoCloseable {
+
+    private final BrokerService broker;
+    private final List<Registry> registries = new ArrayList<>();
+    private final List<Remote> workers = new ArrayList<>();
+    private final StubC06 c06;
+    private final C03Lanes c03;
+    final int c01Port;
+
+    Pipeline(long c06DelayMs) throws Exception {
+        int brokerPort = getint("JMS_BROKER_PORT", 61616);
+        broker = startBroker(brokerPort);
+
+        c06 = new StubC06(URI.create(getenv("C06_BASE_URL", "http://localhost:3000")).getPort(),
+                getint("C06_STUB_THREADS", 8), c06DelayMs);
+
+        System.setProperty("java.rmi.server.hostname", "localhost");
+        for (String part : getenv("RMI_WORKERS", "localhost:1099").split(",")) {
+            String[] hp = part.trim().split(":");
+            if (!hp[0].equals("localhost") && !hp[0].equals("127.0.0.1")) continue;
+            startWorker(Integer.parseInt(hp[1]));
+        }
+
+        c03 = new C03Lanes("tcp://localhost:" + brokerPort);
+
+        c01Port = getint("PORT", 8081);
+        ro.ase.dad.c01.Main.main(new String[0]);
+    }
+
+    private static BrokerService startBroker(int port) throws Exception {
+        BrokerService b = new BrokerService();
+        b.setBrokerName("dad-loadtest");
+        b.setPersistent(false);
+        b.setUseJmx(false);
+        b.setAdvisorySupport(false);
+
+        VirtualDestinationInterceptor virtual = new VirtualDestinationInterceptor();
+        virtual.setVirtualDestinations(new VirtualDestination[]{virtualTopic("bmp.topic"), virtualTopic("bmp.fast.topic")});
+        b.setDestinationInterceptors(new DestinationInterceptor[]{virtual});
+
+        PolicyEntry jobs = new PolicyEntry();
+        jobs.setQueue("Consumer.*.bmp.>");
+        jobs.setPrioritizedMessages(true);
+        IndividualDeadLetterStrategy dlq = new IndividualDeadLetterStrategy();
+        dlq.setQueuePrefix("DLQ.");
+        dlq.setUseQueueForQueueMessages(true);
+        jobs.setDeadLetterStrategy(dlq);
+        PolicyMap policies = new PolicyMap();
+        policies.setPolicyEntries(List.of(jobs));
+        b.setDestinationPolicy(policies);
+
+        b.addConnector("tcp://0.0.0.0:" + port + "?wireFormat.maxFrameSize=104857600");
+        b.start();
+        b.waitUntilStarted();
+        return b;
+    }
+
+    private static VirtualTopic virtualTopic(String name) {
+        VirtualTopic t = new VirtualTopic();
+        t.setName(name);
+        t.setPrefix("Consumer.*.");
+        t.setSelectorAware(false);
+        return t;
+    }
+
+    // the worker classes are in the default package: reachable only reflectively from here
+    private void startWorker(int registryPort) throws Exception {
+        Constructor<?> ctor = Class.forName("ZoomServiceImpl").getDeclaredConstructor();
+        ctor.setAccessible(true);
+        Remote impl = (Remote) ctor.newInstance();
+        Registry reg = LocateRegistry.createRegistry(registryPort);
+        reg.rebind("ZoomService", impl);
+        registries.add(reg);
+        workers.add(impl);
+    }
+
+    StubC06 c06() {
+        return c06;
+    }
+
+    @Override
+    public void close() throws Exception {
+        c03.close();
+        c06.close();
+        broker.stop();
+    }
+
+    private static String getenv(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    private static int getint(String key, int def) {
+        String v = System.getenv(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ro.ase.dad.bench.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for c06's {@code POST /images}: reads and discards the body, waits the configured
+ * delay (a stand-in for MySQL) and answers {"id": n} like the Node service.
+ */
+final class StubC06 implements AutoCloseable {
+
+    private final HttpServer server;
+    private final long delayMs;
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    StubC06(int port, int threads, long delayMs) throws Exception {
+        this.delayMs = delayMs;
+        server = HttpServer.create(new InetSocketAddress(port), 256);
+        server.createContext("/images", this::store);
+        server.setExecutor(Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "stub-c06");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+    }
+
+    private void store(HttpExchange ex) throws java.io.IOException {
+        try (ex) {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            long n;
+            try (InputStream in = ex.getRequestBody()) {
+                n = in.transferTo(OutputStream.nullOutputStream());
+            }
+            bytes.addAndGet(n);
+            if (delayMs > 0) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = ("{\"id\":" + ids.incrementAndGet() + "}").getBytes(StandardCharsets.UTF_8);
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.sendResponseHeaders(200, body.length);
+            ex.getResponseBody().write(body);
+        }
+    }
+
+    long stored() {
+        return ids.get();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,130 @@
+package ro.ase.dad.bench.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Submits jobs to c01 the way the frontend does: multipart POST /api/jobs with the session id of
+ * an open /ws connection, then waits for the job's DONE or FAILED update on that connection.
+ * A job whose update does not arrive in time is looked up with GET /api/jobs/{jobId} once.
+ */
+final class Uploader {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String BOUNDARY = "----dad-loadtest-boundary";
+
+    private final String base;
+    private final long timeoutMs;
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Updates[] sockets;
+    private final AtomicInteger next = new AtomicInteger();
+
+    Uploader(int c01Port, int connections, long timeoutMs) {
+        this.base = "http://localhost:" + c01Port;
+        this.timeoutMs = timeoutMs;
+        this.sockets = new Updates[Math.max(1, connections)];
+        for (int i = 0; i < sockets.length; i++) {
+            sockets[i] = new Updates();
+            http.newWebSocketBuilder().buildAsync(URI.create("ws://localhost:" + c01Port + "/ws"), sockets[i]).join();
+            sockets[i].sessionId.orTimeout(10, TimeUnit.SECONDS).join();
+        }
+    }
+
+    /** Completes with the job's final status ("DONE", "FAILED", or the status it was stuck in). */
+    CompletableFuture<String> submit(byte[] bmp, String filename, boolean zoomIn, int percent, String mode) {
+        Updates ws = sockets[Math.floorMod(next.getAndIncrement(), sockets.length)];
+
+        StringBuilder head = new StringBuilder();
+        field(head, "zoomIn", String.valueOf(zoomIn));
+        field(head, "percent", String.valueOf(percent));
+        field(head, "mode", mode);
+        field(head, "wsSession", ws.sessionId.join());
+        head.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"").append(filename).append("\"\r\n")
+                .append("Content-Type: image/bmp\r\n\r\n");
+
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/api/jobs"))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofString(head.toString()),
+                        HttpRequest.BodyPublishers.ofByteArray(bmp),
+                        HttpRequest.BodyPublishers.ofString("\r\n--" + BOUNDARY + "--\r\n")))
+                .build();
+
+        return http.sendAsync(req, HttpResponse.BodyHandlers.ofString()).thenCompose(resp -> {
+            if (resp.statusCode() != 200) {
+                return CompletableFuture.completedFuture("HTTP " + resp.statusCode());
+            }
+            String jobId = read(resp.body()).path("jobId").asText();
+            return ws.await(jobId)
+                    .completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS)
+                    .thenCompose(status -> status != null ? CompletableFuture.completedFuture(status) : poll(jobId))
+                    .whenComplete((s, e) -> ws.jobs.remove(jobId));
+        });
+    }
+
+    private CompletableFuture<String> poll(String jobId) {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + "/api/jobs/" + jobId)).GET().build();
+        return http.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                .thenApply(resp -> read(resp.body()).path("status").asText("UNKNOWN"));
+    }
+
+    private static void field(StringBuilder sb, String name, String value) {
+        sb.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+                .append(value).append("\r\n");
+    }
+
+    private static JsonNode read(String s) {
+        try {
+            return JSON.readTree(s);
+        } catch (Exception e) {
+            throw new IllegalStateException("Bad JSON from c01: " + s, e);
+        }
+    }
+
+    /** One /ws connection: its session id and the final updates of the jobs submitted with it. */
+    private static final class Updates implements WebSocket.Listener {
+        final CompletableFuture<String> sessionId = new CompletableFuture<>();
+        final Map<String, CompletableFuture<String>> jobs = new ConcurrentHashMap<>();
+        private final StringBuilder partial = new StringBuilder();
+
+        // the update can arrive before the POST response, so either side may create the entry
+        CompletableFuture<String> await(String jobId) {
+            return jobs.computeIfAbsent(jobId, k -> new CompletableFuture<>());
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                JsonNode msg = read(partial.toString());
+                partial.setLength(0);
+                if ("hello".equals(msg.path("type").asText())) {
+                    sessionId.complete(msg.path("sessionId").asText());
+                } else if (msg.hasNonNull("jobId") && msg.hasNonNull("status")) {
+                    await(msg.get("jobId").asText()).complete(msg.get("status").asText());
+                }
+            }
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            System.out.println("LOAD: ws error: " + error.getMessage());
+        }
+    }
+}
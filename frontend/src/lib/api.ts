@@ -5,13 +5,25 @@ export type JobCreateResponse = { jobId: string; status: "PENDING" };
 
 export type JobStatusResponse =
   | { jobId: string; status: "PENDING" }
-  | { jobId: string; status: "DONE"; imageId: number; downloadUrl: string };
+  | { jobId: string; status: "DONE"; imageId: number; downloadUrl: string }
+  | { jobId: string; status: "FAILED"; error: string };
 
-export async function createJob(file: File, zoomIn: boolean, percent: number) {
+export type ResamplingMode = "nearest" | "bilinear" | "bicubic" | "area";
+
+export async function createJob(
+  file: File,
+  zoomIn: boolean,
+  percent: number,
+  mode: ResamplingMode = "nearest",
+  wsSession?: string | null
+) {
   const fd = new FormData();
   fd.append("file", file);
   fd.append("zoomIn", String(zoomIn));
   fd.append("percent", String(percent));
+  fd.append("mode", mode);
+  // lets c01 push this job's result to our WebSocket session
+  if (wsSession) fd.append("wsSession", wsSession);
 
   const res = await fetch(`${C01_HTTP}/api/jobs`, { method: "POST", body: fd });
   if (!res.ok) throw new Error(`Upload failed: ${res.status}`);
@@ -11,22 +11,38 @@ import { Input } from '../components/ui/input';
 import { Label } from '../components/ui/label';
 import { Badge } from '../components/ui/badge';
 import { toast } from 'sonner';
-import { createJob, getJob, type JobStatusResponse } from '../lib/api';
+import {
+	createJob,
+	getJob,
+	type JobStatusResponse,
+	type ResamplingMode,
+} from '../lib/api';
 import { Dropzone } from '../components/app/Dropzone';
 import { Download } from 'lucide-react';
 
 const C01_WS = import.meta.env.VITE_C01_WS as string;
 
+const RESAMPLING_MODES: { value: ResamplingMode; label: string }[] = [
+	{ value: 'nearest', label: 'Nearest' },
+	{ value: 'bilinear', label: 'Bilinear' },
+	{ value: 'bicubic', label: 'Bicubic' },
+	{ value: 'area', label: 'Area' },
+];
+
 export function ZoomStudio({ onWsState }: { onWsState: (s: any) => void }) {
 	const [file, setFile] = useState<File | null>(null);
 	const [zoomIn, setZoomIn] = useState(true);
 	const [percent, setPercent] = useState(20);
+	const [mode, setMode] = useState<ResamplingMode>('nearest');
 
 	const [jobId, setJobId] = useState<string | null>(null);
 	const [status, setStatus] = useState<JobStatusResponse | null>(null);
 	const [busy, setBusy] = useState(false);
 
 	const wsRef = useRef<WebSocket | null>(null);
+	// session id from c01's "hello"; sent with each job so c01 pushes only our jobs
+	const wsSessionRef = useRef<string | null>(null);
+	const jobIdRef = useRef<string | null>(null);
 
 	// WS connect (once)
 	useEffect(() => {
@@ -35,12 +51,37 @@ export function ZoomStudio({ onWsState }: { onWsState: (s: any) => void }) {
 		wsRef.current = ws;
 
 		ws.onopen = () => onWsState('connected');
-		ws.onclose = () => onWsState('disconnected');
+		ws.onclose = () => {
+			wsSessionRef.current = null;
+			onWsState('disconnected');
+		};
 		ws.onerror = () => onWsState('disconnected');
 
 		ws.onmessage = (ev) => {
 			try {
 				const msg = JSON.parse(ev.data);
+				if (msg?.type === 'hello' && typeof msg?.sessionId === 'string') {
+					wsSessionRef.current = msg.sessionId;
+					return;
+				}
+				if (msg?.type === 'dropped') {
+					// c01 dropped updates for this slow tab; ask for our job directly
+					const id = jobIdRef.current;
+					if (id) getJob(id).then(setStatus).catch(() => {});
+					return;
+				}
+				if (msg?.jobId !== jobIdRef.current) return;
+				if (msg?.status === 'FAILED') {
+					setStatus({
+						jobId: msg.jobId,
+						status: 'FAILED',
+						error: String(msg.error ?? ''),
+					});
+					toast.error('Job failed', {
+						description: String(msg.error ?? ''),
+					});
+					return;
+				}
 				if (msg?.status === 'DONE' && typeof msg?.jobId === 'string') {
 					const imgId =
 						msg.downloadUrl?.split('/')[
@@ -93,9 +134,22 @@ export function ZoomStudio({ onWsState }: { onWsState: (s: any) => void }) {
 		setBusy(true);
 		setStatus(null);
 		setJobId(null);
+		jobIdRef.current = null;
 
 		try {
-			const resp = await createJob(file, zoomIn, percent);
+			const resp = await createJob(
+				file,
+				zoomIn,
+				percent,
+				mode,
+				wsSessionRef.current,
+			);
+			jobIdRef.current = resp.jobId;
+			// explicit subscribe as well, in case the hello had not arrived before the upload
+			const ws = wsRef.current;
+			if (ws && ws.readyState === WebSocket.OPEN) {
+				ws.send(JSON.stringify({ type: 'subscribe', jobId: resp.jobId }));
+			}
 			setJobId(resp.jobId);
 			setStatus({ jobId: resp.jobId, status: 'PENDING' });
 			toast.message('Job submitted', { description: `jobId: ${resp.jobId}` });
@@ -132,7 +186,10 @@ export function ZoomStudio({ onWsState }: { onWsState: (s: any) => void }) {
 									type='button'
 									variant={zoomIn ? 'secondary' : 'outline'}
 									className='flex-1'
-									onClick={() => setZoomIn(true)}
+									onClick={() => {
+										setZoomIn(true);
+										if (mode === 'area') setMode('bilinear');
+									}}
 									disabled={busy}
 								>
 									Zoom In
@@ -149,6 +206,26 @@ export function ZoomStudio({ onWsState }: { onWsState: (s: any) => void }) {
 							</div>
 						</div>
 
+						<div className='space-y-2'>
+							<Label>Resampling</Label>
+							<div className='grid grid-cols-4 gap-2'>
+								{RESAMPLING_MODES.map((m) => (
+									<Button
+										key={m.value}
+										type='button'
+										variant={mode === m.value ? 'secondary' : 'outline'}
+										onClick={() => setMode(m.value)}
+										disabled={busy || (m.value === 'area' && zoomIn)}
+									>
+										{m.label}
+									</Button>
+								))}
+							</div>
+							<div className='text-xs text-zinc-500'>
+								Area average is for zoom out only.
+							</div>
+						</div>
+
 						<div className='space-y-2'>
 							<Label>Percent</Label>
 							<Input
@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+# Runs the JMH benchmarks (build first: cd bench && mvn -B package).
+# Extra arguments go to JMH, e.g.  scripts/bench.sh -p size=2048x1536 ZoomBench
+# Compare against a baseline:       scripts/bench.sh compare base.json bench-result.json [10]
+set -e
+cd "$(dirname "$0")/.."
+JAR=bench/target/benchmarks.jar
+
+if [ "$1" = "compare" ]; then
+  shift
+  exec java -cp "$JAR" ro.ase.dad.bench.Compare "$@"
+fi
+
+exec java --add-modules jdk.incubator.vector -jar "$JAR" \
+  -prof gc -rf json -rff "${BENCH_RESULT:-bench-result.json}" "$@"
@@ -0,0 +1,31 @@
+#!/usr/bin/env bash
+# Offline load test: c01, the broker, c03's job path, two workers and a stub c06 in one JVM.
+# Build first (cd bench && mvn -B package). Options go to LoadTest, e.g.
+#   scripts/loadtest.sh --clients 8 --duration-s 120 --mix 512x512x24:8,8192x8192x24:1
+#   scripts/loadtest.sh --rate 5 --c06-delay-ms 20
+# Service settings are the same environment variables as in docker-compose.yml; the defaults
+# below mirror it, with every service on localhost.
+set -e
+cd "$(dirname "$0")/.."
+WORK="${LOADTEST_DIR:-${TMPDIR:-/tmp}/dad-loadtest}"
+mkdir -p "$WORK/blobs" "$WORK/spool"
+
+# c02 / c01
+export JMS_BROKER_HOST=localhost
+export JMS_BROKER_PORT="${JMS_BROKER_PORT:-61626}"
+export PORT="${PORT:-18081}"
+export C06_BASE_URL="${C06_BASE_URL:-http://localhost:13000}"
+export JMS_ENCODING="${JMS_ENCODING:-deflate}"
+export BLOB_DIR="${BLOB_DIR:-$WORK/blobs}"
+export UPLOAD_SPOOL_DIR="${UPLOAD_SPOOL_DIR:-$WORK/spool}"
+
+# c03; the generator resends the same images, so the result cache is off unless asked for
+export RMI_WORKERS="${RMI_WORKERS:-localhost:21099,localhost:21100}"
+export RMI_OBJ_PORT="${RMI_OBJ_PORT:-0}"
+export RMI_HEDGE="${RMI_HEDGE:-true}"
+export RESULT_CACHE="${RESULT_CACHE:-false}"
+export MDB_MAX_SESSIONS="${MDB_MAX_SESSIONS:-4}"
+export MDB_FAST_SESSIONS="${MDB_FAST_SESSIONS:-2}"
+
+exec java ${LOADTEST_JAVA_OPTS:--Xmx6g} --add-modules jdk.incubator.vector \
+  -cp bench/target/benchmarks.jar ro.ase.dad.bench.load.LoadTest "$@"